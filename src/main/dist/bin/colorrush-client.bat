@@ -0,0 +1,8 @@
+@echo off
+rem Клиент ColorRush на урезанной среде выполнения с архивом CDS (собирается: mvn -Pfast-start package).
+cd /d "%~dp0.."
+
+set CDS=
+if exist cds\client.jsa set CDS=-XX:SharedArchiveFile=cds\client.jsa
+
+runtime\bin\java %CDS% %JAVA_OPTS% -cp lib\ColorRush.jar client.Launcher %*
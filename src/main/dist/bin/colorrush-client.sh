@@ -0,0 +1,11 @@
+#!/bin/sh
+# Клиент ColorRush на урезанной среде выполнения с архивом CDS (собирается: mvn -Pfast-start package).
+# Время старта - в журнале: "[APP] Первый кадр: N мс после запуска процесса".
+cd "$(dirname "$0")/.." || exit 1
+
+CDS=""
+if [ -f cds/client.jsa ]; then
+    CDS="-XX:SharedArchiveFile=cds/client.jsa"
+fi
+
+exec runtime/bin/java $CDS $JAVA_OPTS -cp lib/ColorRush.jar client.Launcher "$@"
@@ -0,0 +1,9 @@
+@echo off
+rem Узел ColorRush на урезанной среде выполнения с архивом CDS (собирается: mvn -Pfast-start package).
+rem Параметры сервера - через JAVA_OPTS, например: set JAVA_OPTS=-Dcolorrush.port=5557
+cd /d "%~dp0.."
+
+set CDS=
+if exist cds\server.jsa set CDS=-XX:SharedArchiveFile=cds\server.jsa
+
+runtime\bin\java %CDS% %JAVA_OPTS% -cp lib\ColorRush.jar server.GameServer %*
@@ -0,0 +1,16 @@
+#!/bin/sh
+# Узел ColorRush на урезанной среде выполнения с архивом CDS (собирается: mvn -Pfast-start package).
+# Параметры сервера - через JAVA_OPTS, например:
+#   JAVA_OPTS="-Dcolorrush.port=5557 -Dcolorrush.directory=localhost:5550" bin/colorrush-server.sh
+# Время старта - в журнале: "[SERVER] Прием соединений на порту ..., N мс после запуска процесса".
+# Архив привязан к пути lib/ColorRush.jar, поэтому запуск идет из каталога дистрибутива.
+# Остановка: SIGTERM / Ctrl+C - за секунды (colorrush.shutdownDrainSeconds, по умолчанию 5),
+# команда drain в консоли - доиграть текущий матч (colorrush.drainTimeoutSeconds, по умолчанию 300).
+cd "$(dirname "$0")/.." || exit 1
+
+CDS=""
+if [ -f cds/server.jsa ]; then
+    CDS="-XX:SharedArchiveFile=cds/server.jsa"
+fi
+
+exec runtime/bin/java $CDS $JAVA_OPTS -cp lib/ColorRush.jar server.GameServer "$@"
@@ -0,0 +1,25 @@
+package client;
+
+import common.GameSettings;
+import javafx.scene.paint.Color;
+
+/**
+ * Палитра цветов раундов. Модель и протокол передают только индекс цвета,
+ * преобразование в Color выполняется здесь, один раз при загрузке класса.
+ */
+public final class ColorPalette {
+    private static final Color[] COLORS = new Color[GameSettings.ROUND_COLORS.length];
+
+    static {
+        for (int i = 0; i < COLORS.length; i++) {
+            COLORS[i] = Color.web(GameSettings.ROUND_COLORS[i]);
+        }
+    }
+
+    private ColorPalette() {
+    }
+
+    public static Color of(int colorIndex) {
+        return GameSettings.isValidColor(colorIndex) ? COLORS[colorIndex] : Color.LIGHTGRAY;
+    }
+}
@@ -0,0 +1,244 @@
+package client;
+
+import common.DatagramFrame;
+import common.FrameCompression;
+import common.Message;
+import common.MessageTypes;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UDP-канал клиента рядом с TCP-соединением NetworkService: снимки GAME_STATE приходят датаграммами,
+ * MOVE уходит датаграммами. Снимок с номером не больше последнего принятого отбрасывается.
+ * <p>
+ * Рукопожатие: токен из ответа сервера на CONNECT/RESUME уходит в UDP_HELLO, пока сервер не ответит
+ * тем же. До ответа и после DATAGRAM_TIMEOUT без PONG движения идут по TCP, а UDP_HELLO повторяется.
+ * Раз в секунду - PING для замера задержки; раз в REPORT_INTERVAL потери и задержки выводятся в журнал.
+ */
+class DatagramLink {
+    private static final long HELLO_INTERVAL = 200;
+    // После стольких UDP_HELLO без ответа попытки реже: UDP, возможно, закрыт на пути к серверу
+    private static final int FAST_HELLO_ATTEMPTS = 10;
+    private static final long SLOW_HELLO_INTERVAL = 2000;
+    private static final long PING_INTERVAL = 1000;
+    private static final long DATAGRAM_TIMEOUT = 5000;
+    private static final long REPORT_INTERVAL = 10_000;
+    private static final int RTT_SAMPLES = 256;
+
+    private final DatagramChannel channel;
+    private final String token;
+    private final MessageDispatcher dispatcher;
+    // Разбор сжатых снимков; только в потоке приема
+    private final FrameCompression compression = new FrameCompression();
+    private final AtomicLong moveSeq = new AtomicLong();
+    private volatile boolean ready = false;
+    private volatile boolean closed = false;
+    private volatile long lastReplyAt;
+
+    // Статистика; под блокировкой this
+    private long lastStateSeq = 0;
+    private long statesReceived = 0;
+    private long statesLost = 0;
+    private long statesStale = 0;
+    private long pingsSent = 0;
+    private long pongsReceived = 0;
+    private final long[] rtt = new long[RTT_SAMPLES];
+    private int rttCount = 0;
+
+    private DatagramLink(DatagramChannel channel, String token, MessageDispatcher dispatcher) {
+        this.channel = channel;
+        this.token = token;
+        this.dispatcher = dispatcher;
+    }
+
+    static DatagramLink open(String host, int port, String token, MessageDispatcher dispatcher) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.connect(new InetSocketAddress(host, port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new DatagramLink(channel, token, dispatcher);
+    }
+
+    void start() {
+        Thread receiver = new Thread(this::receive, "udp-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+
+        Thread ticker = new Thread(this::tick, "udp-ticker");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    // Сервер ответил на UDP_HELLO, и канал не молчит
+    boolean isReady() {
+        return ready;
+    }
+
+    // false - канал еще не подтвержден или молчит, движение нужно отправить по TCP
+    boolean sendMove(double x, double y) {
+        if (!ready) return false;
+
+        Message msg = new Message(MessageTypes.MOVE);
+        msg.setX(x);
+        msg.setY(y);
+        return send(DatagramFrame.pack(moveSeq.incrementAndGet(), msg));
+    }
+
+    void close() {
+        closed = true;
+        ready = false;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private boolean send(ByteBuffer datagram) {
+        try {
+            channel.write(datagram);
+            return true;
+        } catch (IOException e) {
+            // ICMP "порт недоступен" или закрытый канал: датаграмма не ушла
+            return false;
+        }
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(DatagramFrame.MAX_SIZE);
+        while (!closed) {
+            try {
+                buffer.clear();
+                channel.read(buffer);
+                buffer.flip();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                continue;
+            }
+            if (buffer.remaining() < DatagramFrame.HEADER) continue;
+
+            Message message;
+            try {
+                message = Message.fromJson(compression.decode(DatagramFrame.frame(buffer)));
+            } catch (Exception e) {
+                continue;
+            }
+            if (message == null || message.getType() == null) continue;
+
+            switch (message.getType()) {
+                case MessageTypes.UDP_HELLO -> {
+                    if (!token.equals(message.getUdpToken())) continue;
+                    lastReplyAt = System.nanoTime();
+                    if (!ready) {
+                        ready = true;
+                        System.out.println("[CLIENT] UDP-канал установлен: снимки и движения датаграммами");
+                    }
+                }
+                case MessageTypes.PONG -> {
+                    lastReplyAt = System.nanoTime();
+                    recordRtt(lastReplyAt - message.getSentAt());
+                }
+                case MessageTypes.GAME_STATE -> {
+                    if (acceptState(DatagramFrame.seq(buffer))) {
+                        dispatcher.dispatch(message);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private synchronized boolean acceptState(long seq) {
+        if (seq <= lastStateSeq) {
+            statesStale++;
+            return false;
+        }
+        if (lastStateSeq > 0) {
+            statesLost += seq - lastStateSeq - 1;
+        }
+        lastStateSeq = seq;
+        statesReceived++;
+        return true;
+    }
+
+    private synchronized void recordRtt(long nanos) {
+        pongsReceived++;
+        rtt[rttCount++ % RTT_SAMPLES] = nanos;
+    }
+
+    // Рукопожатие, PING и отчет - в одном потоке
+    private void tick() {
+        int helloAttempts = 0;
+        long lastHello = 0;
+        long lastPing = 0;
+        long lastReport = System.nanoTime();
+        while (!closed) {
+            long now = System.nanoTime();
+            if (ready && now - lastReplyAt > TimeUnit.MILLISECONDS.toNanos(DATAGRAM_TIMEOUT)) {
+                ready = false;
+                helloAttempts = 0;
+                System.out.println("[CLIENT] UDP-канал молчит, движения по TCP");
+            }
+
+            if (!ready) {
+                long interval = helloAttempts < FAST_HELLO_ATTEMPTS ? HELLO_INTERVAL : SLOW_HELLO_INTERVAL;
+                if (now - lastHello >= TimeUnit.MILLISECONDS.toNanos(interval)) {
+                    Message hello = new Message(MessageTypes.UDP_HELLO);
+                    hello.setUdpToken(token);
+                    send(DatagramFrame.pack(0, hello));
+                    helloAttempts++;
+                    lastHello = now;
+                }
+            } else if (now - lastPing >= TimeUnit.MILLISECONDS.toNanos(PING_INTERVAL)) {
+                Message ping = new Message(MessageTypes.PING);
+                ping.setSentAt(now);
+                synchronized (this) {
+                    pingsSent++;
+                }
+                send(DatagramFrame.pack(0, ping));
+                lastPing = now;
+            }
+
+            if (now - lastReport >= TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL)) {
+                report();
+                lastReport = now;
+            }
+
+            try {
+                Thread.sleep(HELLO_INTERVAL);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    synchronized void report() {
+        if (statesReceived == 0 && pingsSent == 0) return;
+
+        long expected = statesReceived + statesLost;
+        StringBuilder sb = new StringBuilder("[CLIENT] UDP: снимков ").append(statesReceived)
+                .append(", потеряно ").append(statesLost)
+                .append(String.format(" (%.1f%%)", expected > 0 ? 100.0 * statesLost / expected : 0.0))
+                .append(", устаревших ").append(statesStale)
+                .append(", PING без ответа ").append(Math.max(0, pingsSent - pongsReceived)).append(" из ").append(pingsSent);
+        int samples = Math.min(rttCount, RTT_SAMPLES);
+        if (samples > 0) {
+            long[] sorted = Arrays.copyOf(rtt, samples);
+            Arrays.sort(sorted);
+            sb.append(String.format(", RTT медиана %.1f мс, 99%% %.1f мс",
+                    sorted[samples / 2] / 1e6, sorted[Math.min(samples - 1, samples * 99 / 100)] / 1e6));
+        }
+        System.out.println(sb);
+    }
+}
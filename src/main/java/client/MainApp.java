@@ -5,10 +5,9 @@ import client.controllers.GameController;
 import client.controllers.GameOverController;
 import common.Message;
 import common.MessageTypes;
+import common.ProcessClock;
 import javafx.application.Application;
 import javafx.application.Platform;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.stage.Stage;
@@ -19,6 +18,7 @@ public class MainApp extends Application {
 
     private Stage primaryStage;
     private NetworkService networkService;
+    private ScreenCache screens;
 
     // Текущие контроллеры для доступа к их методам
     private ConnectionController connectionController;
@@ -26,14 +26,19 @@ public class MainApp extends Application {
     private GameOverController gameOverController;
 
     private boolean isClosing = false;
+    // Номер показанного экрана: отложенный возврат с экрана окончания не трогает более поздний экран
+    private int screenSerial = 0;
     private boolean gameStarted = false;
     private boolean showCompass = true; // Значение по умолчанию
 
     @Override
     public void start(Stage stage) {
         this.primaryStage = stage;
+        long started = System.nanoTime();
         this.networkService = new NetworkService(this::handleServerMessage);
 
+        screens = new ScreenCache(Boolean.parseBoolean(System.getProperty("colorrush.screenCache", "true")));
+
         showConnectionScreen();
 
         primaryStage.setTitle("ColorRush - Мультиплеерная игра");
@@ -48,34 +53,80 @@ public class MainApp extends Application {
             System.exit(0);
         });
         primaryStage.show();
+        System.out.println("[APP] Первое окно показано через " +
+                String.format("%.1f мс", (System.nanoTime() - started) / 1_000_000.0));
+        logFirstFrame(primaryStage.getScene());
     }
 
-    private void handleServerMessage(Message message) {
-        Platform.runLater(() -> {
-            switch (message.getType()) {
-                case MessageTypes.CONNECT:
-                    showGameScreen(message.getPlayerId());
-                    break;
-                case MessageTypes.JOIN_REJECTED:
-                    handleJoinRejected(message);
-                    break;
-                case MessageTypes.GAME_STATE:
-                    handleGameState(message);
-                    break;
-                case MessageTypes.ROUND_START:
-                    handleRoundStart(message);
-                    break;
-                case MessageTypes.GAME_OVER:
-                    showGameOverScreen(message);
-                    break;
-                case MessageTypes.MATCH_START:
-                    handleMatchStart(message);
-                    break;
-                case MessageTypes.PLAYER_ELIMINATED:
-                    handlePlayerEliminated(message);
-                    break;
+    // Первый кадр - конец первого импульса отрисовки после показа окна
+    private void logFirstFrame(Scene scene) {
+        Runnable[] listener = new Runnable[1];
+        listener[0] = () -> {
+            scene.removePostLayoutPulseListener(listener[0]);
+            System.out.println("[APP] Первый кадр: " + ProcessClock.describe());
+
+            // Игровой экран и экран окончания загружаются в фоне, пока пользователь вводит имя.
+            // Не раньше первого кадра: на одном ядре загрузка отнимала бы время у первого окна
+            screens.preload(ScreenCache.GAME, ScreenCache.GAME_OVER);
+
+            // Обучающий прогон для архива CDS (профиль fast-start): дождаться фоновой загрузки
+            // остальных экранов, чтобы их классы тоже попали в архив, и выйти
+            if (Boolean.getBoolean("colorrush.exitAfterStart")) {
+                Thread exit = new Thread(() -> {
+                    try {
+                        screens.get(ScreenCache.GAME);
+                        screens.get(ScreenCache.GAME_OVER);
+                    } catch (IOException e) {
+                        System.err.println("[APP] Ошибка загрузки экранов: " + e.getMessage());
+                    }
+                    Platform.exit();
+                    System.exit(0);
+                }, "training-exit");
+                exit.setDaemon(true);
+                exit.start();
             }
-        });
+        };
+        scene.addPostLayoutPulseListener(listener[0]);
+    }
+
+    // Вызывается в потоке FX диспетчером сообщений NetworkService
+    private void handleServerMessage(Message message) {
+        switch (message.getType()) {
+            case MessageTypes.CONNECT:
+                showGameScreen(message.getPlayerId(), message.isSpectator());
+                break;
+            case MessageTypes.RESUME:
+                handleResume(message);
+                break;
+            case MessageTypes.JOIN_REJECTED:
+                handleJoinRejected(message);
+                break;
+            case MessageTypes.GAME_STATE:
+                handleGameState(message);
+                break;
+            case MessageTypes.ROUND_START:
+                handleRoundStart(message);
+                break;
+            case MessageTypes.GAME_OVER:
+                showGameOverScreen(message);
+                break;
+            case MessageTypes.MATCH_START:
+                handleMatchStart(message);
+                break;
+            case MessageTypes.PLAYER_ELIMINATED:
+                handlePlayerEliminated(message);
+                break;
+        }
+    }
+
+    // Сессия восстановлена после обрыва; состояние придет следующим полным снимком
+    private void handleResume(Message message) {
+        System.out.println("[APP] Сессия восстановлена");
+        if (gameController != null) {
+            gameController.setPlayerId(message.getPlayerId());
+        } else {
+            showGameScreen(message.getPlayerId(), false);
+        }
     }
 
     private void handleJoinRejected(Message message) {
@@ -95,21 +146,12 @@ public class MainApp extends Application {
         });
     }
     private void handlePlayerEliminated(Message message) {
-        Platform.runLater(() -> {
-            // Показываем экран окончания игры с надписью "Вы проиграли"
-            if (message.getWinner() == null || message.getWinner().isEmpty()) {
-                message.setWinner("Вы проиграли!");
-            }
-            showGameOverScreen(message);
-
-            // Автоматически закрываем соединение после показа экрана
-            new Thread(() -> {
-                try {
-                    Thread.sleep(5000); // 5 секунд на экране
-                } catch (InterruptedException ignored) {}
-                networkService.disconnect();
-            }).start();
-        });
+        // Показываем экран окончания игры с надписью "Вы проиграли"
+        if (message.getWinner() == null || message.getWinner().isEmpty()) {
+            message.setWinner("Вы проиграли!");
+        }
+        // Соединение закрывает сам экран окончания
+        showGameOverScreen(message);
     }
 
     private void handleGameState(Message message) {
@@ -126,7 +168,7 @@ public class MainApp extends Application {
     private void handleMatchStart(Message message) {
         // Если мы не в игре - показываем игровой экран
         if (gameController == null) {
-            showGameScreen(null);
+            showGameScreen(null, false);
         }
     }
 
@@ -136,7 +178,7 @@ public class MainApp extends Application {
             gameController.handleRoundStart(message);
         } else {
             // Иначе показываем игровой экран и затем обрабатываем сообщение
-            showGameScreen(null);
+            showGameScreen(null, false);
             if (gameController != null) {
                 gameController.handleRoundStart(message);
             }
@@ -153,19 +195,17 @@ public class MainApp extends Application {
             // ЯВНО сбрасываем параметры окна
             primaryStage.setResizable(false);
 
-            // Загружаем FXML и получаем контроллер
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/client/views/connection_screen.fxml"));
-            Parent root = loader.load();
+            long started = System.nanoTime();
+            ScreenCache.Screen<ConnectionController> screen = screens.get(ScreenCache.CONNECTION);
+            screenSerial++;
 
-            connectionController = loader.getController();
+            connectionController = screen.getController();
+            connectionController.reset();
             connectionController.setMainApp(this);
             connectionController.setNetworkService(networkService);
 
-            // Создаем новую сцену с ПРАВИЛЬНЫМИ ПАРАМЕТРАМИ
-            Scene scene = new Scene(root);
-
-            // Устанавливаем фиксированный размер ПОСЛЕ создания сцены
-            primaryStage.setScene(scene);
+            // Устанавливаем фиксированный размер ПОСЛЕ установки сцены
+            primaryStage.setScene(screen.getScene());
             primaryStage.setWidth(400);
             primaryStage.setHeight(300);
 
@@ -178,27 +218,30 @@ public class MainApp extends Application {
             });
 
             // Сбрасываем другие контроллеры
-            gameController = null;
+            stopGameScreen();
             gameOverController = null;
 
             gameStarted = false;
-            System.out.println("[APP] Показан экран подключения");
+            logTransition("экран подключения", started);
         } catch (IOException e) {
             e.printStackTrace();
             System.err.println("Ошибка загрузки FXML для экрана подключения");
         }
     }
 
-    public void showGameScreen(String playerId) {
+    public void showGameScreen(String playerId, boolean spectator) {
         try {
-            // Загружаем FXML и получаем контроллер
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/client/views/game_screen.fxml"));
-            Parent root = loader.load();
+            long started = System.nanoTime();
+            ScreenCache.Screen<GameController> screen = screens.get(ScreenCache.GAME);
+            screenSerial++;
 
-            gameController = loader.getController();
+            stopGameScreen();
+            gameController = screen.getController();
+            gameController.reset();
             gameController.setMainApp(this);
             gameController.setNetworkService(networkService);
             gameController.setPlayerId(playerId);
+            gameController.setSpectator(spectator);
 
             // Получаем значение компаса из предыдущего экрана
             if (connectionController != null) {
@@ -207,9 +250,8 @@ public class MainApp extends Application {
                 gameController.setShowCompass(showCompass);
             }
 
-            // Создаем новую сцену
-            Scene scene = new Scene(root);
-            primaryStage.setScene(scene);
+            primaryStage.setScene(screen.getScene());
+            gameController.start();
 
             // Вход в полноэкранный режим
             primaryStage.setFullScreen(true);
@@ -227,7 +269,7 @@ public class MainApp extends Application {
             gameOverController = null;
 
             gameStarted = true;
-            System.out.println("[APP] Показан игровой экран");
+            logTransition("игровой экран", started);
         } catch (IOException e) {
             e.printStackTrace();
             System.err.println("Ошибка загрузки FXML для игрового экрана");
@@ -241,16 +283,15 @@ public class MainApp extends Application {
                 primaryStage.setFullScreen(false);
             }
 
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/client/views/game_over_screen.fxml"));
-            Parent root = loader.load();
+            long started = System.nanoTime();
+            ScreenCache.Screen<GameOverController> screen = screens.get(ScreenCache.GAME_OVER);
+            int serial = ++screenSerial;
 
-            gameOverController = loader.getController();
+            gameOverController = screen.getController();
             gameOverController.setMainApp(this);
             gameOverController.setMessageData(message);
 
-            // Создаем новую сцену
-            Scene scene = new Scene(root);
-            primaryStage.setScene(scene);
+            primaryStage.setScene(screen.getScene());
 
             // Устанавливаем фиксированный размер
             primaryStage.setResizable(false);
@@ -260,10 +301,10 @@ public class MainApp extends Application {
 
             // Сбрасываем другие контроллеры
             connectionController = null;
-            gameController = null;
+            stopGameScreen();
 
             gameStarted = false;
-            System.out.println("[APP] Показан экран окончания игры");
+            logTransition("экран окончания игры", started);
 
             // Автоматический возврат к экрану подключения через 5 секунд
             new Thread(() -> {
@@ -275,8 +316,9 @@ public class MainApp extends Application {
                     Thread.sleep(5000); // 5 секунд на экране окончания
                 } catch (InterruptedException ignored) {}
 
+                // Повторный показ (PLAYER_ELIMINATED, затем GAME_OVER) или новый матч отменяют возврат
                 Platform.runLater(() -> {
-                    if (!isClosing) {
+                    if (!isClosing && screenSerial == serial) {
                         showConnectionScreen();
                     }
                 });
@@ -287,6 +329,19 @@ public class MainApp extends Application {
         }
     }
 
+    // Игровой цикл и анимации ушедшего игрового экрана останавливаются
+    private void stopGameScreen() {
+        if (gameController != null) {
+            gameController.cleanup();
+            gameController = null;
+        }
+    }
+
+    private static void logTransition(String screen, long started) {
+        System.out.println("[APP] Показан " + screen + " за " +
+                String.format("%.1f мс", (System.nanoTime() - started) / 1_000_000.0));
+    }
+
     public void setCompassEnabled(boolean enabled) {
         this.showCompass = enabled;
     }
@@ -0,0 +1,93 @@
+package client;
+
+import common.Message;
+import common.MessageTypes;
+import javafx.application.Platform;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Доставка сообщений сервера в поток JavaFX. Сообщения разбираются в потоке приема,
+ * а в поток FX уходит одна задача на всю пачку, накопившуюся к ее запуску.
+ * Из подряд идущих GAME_STATE доставляется только последний; остальные сообщения
+ * (ROUND_START, GAME_OVER и т.д.) доставляются все и в порядке получения.
+ */
+public class MessageDispatcher {
+    private final Consumer<Message> handler;
+    private final Executor fxExecutor;
+
+    // Очередь событий и последний снимок после них; доступ под блокировкой this
+    private final ArrayDeque<Message> pending = new ArrayDeque<>();
+    private Message latestState;
+    private boolean scheduled = false;
+    private long coalescedStates = 0;
+
+    // Пачка для доставки; используется только в потоке FX
+    private final List<Message> batch = new ArrayList<>();
+
+    public MessageDispatcher(Consumer<Message> handler) {
+        this(handler, Platform::runLater);
+    }
+
+    MessageDispatcher(Consumer<Message> handler, Executor fxExecutor) {
+        this.handler = handler;
+        this.fxExecutor = fxExecutor;
+    }
+
+    // Вызывается из потока приема
+    public void dispatch(Message message) {
+        synchronized (this) {
+            if (MessageTypes.GAME_STATE.equals(message.getType())) {
+                if (latestState != null) {
+                    coalescedStates++;
+                }
+                latestState = message;
+            } else {
+                // Снимок, пришедший до события, доставляется до него
+                if (latestState != null) {
+                    pending.add(latestState);
+                    latestState = null;
+                }
+                pending.add(message);
+            }
+
+            if (scheduled) return;
+            scheduled = true;
+        }
+        fxExecutor.execute(this::drain);
+    }
+
+    private void drain() {
+        synchronized (this) {
+            batch.addAll(pending);
+            pending.clear();
+            if (latestState != null) {
+                batch.add(latestState);
+                latestState = null;
+            }
+            scheduled = false;
+        }
+
+        try {
+            for (Message message : batch) {
+                try {
+                    handler.accept(message);
+                } catch (RuntimeException e) {
+                    System.err.println("[CLIENT][ERROR] Ошибка обработки " + message.getType() + ": " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    // Сколько снимков заменено более новыми, не дойдя до экрана
+    public synchronized long getCoalescedStates() {
+        return coalescedStates;
+    }
+}
@@ -1,32 +1,61 @@
 package client;
 
+import common.FrameCompression;
+import common.GameSettings;
 import common.Message;
 import common.MessageTypes;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
 
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
-import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 
 public class NetworkService {
-    private Socket socket;
+    private static final int RECONNECT_TIMEOUT = 2000;
+    private static final int RECONNECT_MIN_DELAY = 250;
+    private static final int RECONNECT_MAX_DELAY = 2000;
+    // Предлагать серверу сжатие больших кадров; -Dcolorrush.compression=false - не предлагать
+    private static final boolean COMPRESSION = Boolean.parseBoolean(System.getProperty("colorrush.compression", "true"));
+    // Предлагать UDP-канал для снимков и движений; -Dcolorrush.udp=false - все по TCP
+    private static final boolean UDP = Boolean.parseBoolean(System.getProperty("colorrush.udp", "true"));
+
+    private volatile Socket socket;
     private Thread receiveThread;
-    private boolean connected = false;
-    private final Consumer<Message> messageHandler;
+    private volatile boolean connected = false;
+    private final MessageDispatcher dispatcher;
+    // Разбор сжатых кадров; только в потоке приема
+    private final FrameCompression compression = new FrameCompression();
+    // UDP-канал текущего соединения; null - сервер его не предложил или он выключен
+    private volatile DatagramLink datagramLink;
     private OutputStream outputStream;
     private InputStream inputStream;
 
     private String playerId;
 
+    // Для переподключения после обрыва: адрес сервера и токен сессии из CONNECT
+    private String host;
+    private int port;
+    private volatile String sessionToken;
+    private volatile boolean reconnecting = false;
+
+    // Каталог серверов отвечает на CONNECT адресом узла, к которому нужно подключиться
+    private String playerName;
+    private boolean spectator;
+    private Message redirect;
+
     public NetworkService(Consumer<Message> messageHandler) {
-        this.messageHandler = messageHandler;
+        this.dispatcher = new MessageDispatcher(messageHandler);
     }
 
     public void sendMove(double x, double y) {
-        if (!connected) return;
+        if (!connected || reconnecting) return;
+
+        DatagramLink link = datagramLink;
+        if (link != null && link.sendMove(x, y)) return;
 
         try {
             Message msg = new Message(MessageTypes.MOVE);
@@ -36,12 +65,20 @@ public class NetworkService {
             String json = msg.toJson();
             sendRawMessage(json);
         } catch (Exception e) {
-            handleConnectionError(e);
+            if (sessionToken != null) {
+                // Поток приема заметит закрытый сокет и переподключится
+                closeSocket();
+            } else {
+                handleConnectionError(e);
+            }
         }
     }
 
     public boolean connect(String host, int port) {
         System.out.println("[CLIENT]1 Attempting to connect to " + host + ":" + port);
+        this.host = host;
+        this.port = port;
+        this.sessionToken = null;
         try {
             socket = new Socket(host, port);
             System.out.println("[CLIENT]2 Successfully connected to server");
@@ -78,6 +115,8 @@ public class NetworkService {
             }
 
             connected = false;
+            sessionToken = null;
+            closeDatagramLink();
             if (receiveThread != null) {
                 receiveThread.interrupt();
             }
@@ -90,11 +129,16 @@ public class NetworkService {
         }
     }
 
-    public void sendConnect(String playerName) {
+    public void sendConnect(String playerName, boolean spectator) {
         if (!connected) return;
+        this.playerName = playerName;
+        this.spectator = spectator;
         try {
             Message msg = new Message(MessageTypes.CONNECT);
             msg.setPlayerName(playerName);
+            msg.setSpectator(spectator);
+            if (COMPRESSION) msg.setCompression(FrameCompression.DEFLATE);
+            if (UDP) msg.setUdp(true);
 
             String json = msg.toJson();
             sendRawMessage(json);
@@ -104,7 +148,7 @@ public class NetworkService {
         }
     }
 
-    private void sendRawMessage(String message) throws IOException {
+    private synchronized void sendRawMessage(String message) throws IOException {
         // Add newline delimiter for proper reading on the server side
         String messageWithNewline = message + "\n";
         byte[] bytes = messageWithNewline.getBytes(StandardCharsets.UTF_8);
@@ -113,44 +157,183 @@ public class NetworkService {
     }
 
     private void receiveMessages() {
+        try {
+            // После обрыва пробуем вернуться в игру по токену сессии
+            while (true) {
+                try {
+                    readMessages();
+                    if (!connected) break;
+                    if (redirect != null) {
+                        followRedirect();
+                        continue;
+                    }
+                    System.out.println("[CLIENT] Server closed the connection");
+                } catch (IOException e) {
+                    if (!connected) break;
+                    System.err.println("[CLIENT][ERROR] IOException: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+                    if (sessionToken == null) {
+                        handleConnectionError(e);
+                        break;
+                    }
+                }
+                if (sessionToken == null || !reconnect()) {
+                    handleConnectionError(new IOException("Не удалось восстановить соединение"));
+                    break;
+                }
+            }
+        } finally {
+            System.out.println("[CLIENT][DEBUG] Message receiving thread finished");
+            connected = false;
+        }
+    }
+
+    private void readMessages() throws IOException {
         byte[] buffer = new byte[4096];
         StringBuilder currentMessage = new StringBuilder();
 
-        try {
-            int bytesRead;
-            while (connected && (bytesRead = inputStream.read(buffer)) != -1) {
-                String received = new String(buffer, 0, bytesRead, StandardCharsets.UTF_8);
-
-                currentMessage.append(received);
-
-                // Process messages separated by newline
-                while (currentMessage.indexOf("\n") != -1) {
-                    int endIndex = currentMessage.indexOf("\n");
-                    String json = currentMessage.substring(0, endIndex).trim();
-                    currentMessage.delete(0, endIndex + 1);
-
-                    if (!json.isEmpty()) {
-
-                        try {
-                            Message message = Message.fromJson(json);
-                            Platform.runLater(() -> messageHandler.accept(message));
-                        } catch (Exception e) {
-                            System.err.println("[CLIENT][ERROR] Parsing error: " + e.getMessage());
-                            System.err.println("[CLIENT][DEBUG] Invalid JSON: " + json);
-                            e.printStackTrace();
+        int bytesRead;
+        while (connected && (bytesRead = inputStream.read(buffer)) != -1) {
+            String received = new String(buffer, 0, bytesRead, StandardCharsets.UTF_8);
+
+            currentMessage.append(received);
+
+            // Process messages separated by newline
+            while (currentMessage.indexOf("\n") != -1) {
+                int endIndex = currentMessage.indexOf("\n");
+                String json = currentMessage.substring(0, endIndex).trim();
+                currentMessage.delete(0, endIndex + 1);
+
+                if (!json.isEmpty()) {
+
+                    try {
+                        Message message = Message.fromJson(compression.decode(json));
+                        if (MessageTypes.REDIRECT.equals(message.getType())) {
+                            redirect = message;
+                            return;
                         }
+                        trackSession(message);
+                        dispatcher.dispatch(message);
+                    } catch (Exception e) {
+                        System.err.println("[CLIENT][ERROR] Parsing error: " + e.getMessage());
+                        System.err.println("[CLIENT][DEBUG] Invalid JSON: " + json);
+                        e.printStackTrace();
                     }
                 }
             }
-        } catch (IOException e) {
-            if (connected) {
-                System.err.println("[CLIENT][ERROR] IOException: " + e.getClass().getSimpleName() + ": " + e.getMessage());
-                e.printStackTrace();
-                handleConnectionError(e);
+        }
+    }
+
+    private void trackSession(Message message) {
+        switch (message.getType()) {
+            case MessageTypes.CONNECT, MessageTypes.RESUME -> {
+                if (message.getSessionToken() != null) {
+                    sessionToken = message.getSessionToken();
+                }
+                if (message.getUdpToken() != null) {
+                    openDatagramLink(message.getUdpPort(), message.getUdpToken());
+                }
             }
+            case MessageTypes.JOIN_REJECTED, MessageTypes.GAME_OVER, MessageTypes.PLAYER_ELIMINATED ->
+                    sessionToken = null;
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Переподключение в пределах срока, пока сервер держит место игрока.
+     * Паузы растут экспоненциально со случайным разбросом, чтобы клиенты после общего сбоя
+     * не переподключались одновременно.
+     */
+    private boolean reconnect() {
+        reconnecting = true;
+        closeSocket();
+        long deadline = System.currentTimeMillis() + GameSettings.RECONNECT_GRACE_PERIOD;
+        int delay = RECONNECT_MIN_DELAY;
+
+        try {
+            while (connected && sessionToken != null && System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(delay + ThreadLocalRandom.current().nextInt(delay));
+                } catch (InterruptedException e) {
+                    return false;
+                }
+                delay = Math.min(delay * 2, RECONNECT_MAX_DELAY);
+
+                try {
+                    System.out.println("[CLIENT] Reconnecting to " + host + ":" + port);
+                    Socket newSocket = new Socket();
+                    newSocket.connect(new InetSocketAddress(host, port), RECONNECT_TIMEOUT);
+                    synchronized (this) {
+                        socket = newSocket;
+                        outputStream = newSocket.getOutputStream();
+                        inputStream = newSocket.getInputStream();
+                    }
+
+                    Message msg = new Message(MessageTypes.RESUME);
+                    msg.setSessionToken(sessionToken);
+                    if (COMPRESSION) msg.setCompression(FrameCompression.DEFLATE);
+                    if (UDP) msg.setUdp(true);
+                    sendRawMessage(msg.toJson());
+                    System.out.println("[CLIENT] Reconnected, resuming session");
+                    return true;
+                } catch (IOException e) {
+                    System.out.println("[CLIENT] Reconnect failed: " + e.getMessage());
+                    closeSocket();
+                }
+            }
+            return false;
         } finally {
-            System.out.println("[CLIENT][DEBUG] Message receiving thread finished");
-            connected = false;
+            reconnecting = false;
+        }
+    }
+
+    private void followRedirect() throws IOException {
+        Message target = redirect;
+        redirect = null;
+        closeSocket();
+
+        System.out.println("[CLIENT] Redirected to " + target.getHost() + ":" + target.getPort());
+        Socket newSocket = new Socket();
+        newSocket.connect(new InetSocketAddress(target.getHost(), target.getPort()), RECONNECT_TIMEOUT);
+        synchronized (this) {
+            host = target.getHost();
+            port = target.getPort();
+            socket = newSocket;
+            outputStream = newSocket.getOutputStream();
+            inputStream = newSocket.getInputStream();
+        }
+        sendConnect(playerName, spectator);
+    }
+
+    // Канал привязан к соединению: после переподключения или перенаправления - новый
+    private void openDatagramLink(int udpPort, String token) {
+        closeDatagramLink();
+        try {
+            DatagramLink link = DatagramLink.open(host, udpPort, token, dispatcher);
+            link.start();
+            datagramLink = link;
+        } catch (IOException e) {
+            System.out.println("[CLIENT] UDP-канал недоступен, все по TCP: " + e.getMessage());
+        }
+    }
+
+    private void closeDatagramLink() {
+        DatagramLink link = datagramLink;
+        datagramLink = null;
+        if (link != null) {
+            link.close();
+        }
+    }
+
+    private void closeSocket() {
+        closeDatagramLink();
+        try {
+            Socket current = socket;
+            if (current != null && !current.isClosed()) {
+                current.close();
+            }
+        } catch (IOException ignored) {
         }
     }
 
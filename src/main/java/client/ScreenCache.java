@@ -0,0 +1,114 @@
+package client;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Экраны клиента (/client/views/*.fxml), загруженные один раз. FXML разбирается в фоновом потоке
+ * после первого кадра, а при переходе берутся готовые корень и контроллер; сцена создается в потоке FX
+ * при первом показе и дальше переиспользуется. Контроллеры сбрасываются перед показом.
+ * <p>
+ * -Dcolorrush.screenCache=false - загрузка FXML при каждом переходе, как раньше (для сравнения
+ * времени переходов в журнале).
+ */
+public class ScreenCache {
+    public static final String CONNECTION = "/client/views/connection_screen.fxml";
+    public static final String GAME = "/client/views/game_screen.fxml";
+    public static final String GAME_OVER = "/client/views/game_over_screen.fxml";
+
+    public static final class Screen<C> {
+        private final Parent root;
+        private final C controller;
+        private Scene scene;
+
+        private Screen(Parent root, C controller) {
+            this.root = root;
+            this.controller = controller;
+        }
+
+        public C getController() {
+            return controller;
+        }
+
+        // Только из потока FX
+        public Scene getScene() {
+            if (scene == null) {
+                scene = new Scene(root);
+            }
+            return scene;
+        }
+    }
+
+    private final boolean enabled;
+    private final Map<String, CompletableFuture<Screen<?>>> screens = new ConcurrentHashMap<>();
+
+    public ScreenCache(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Загружает экраны в фоновом потоке, не задерживая показ первого окна.
+     */
+    public void preload(String... views) {
+        if (!enabled) return;
+        for (String view : views) {
+            screens.computeIfAbsent(view, v -> CompletableFuture.supplyAsync(() -> load(v), runnable -> {
+                Thread thread = new Thread(runnable, "screen-preload");
+                thread.setDaemon(true);
+                thread.start();
+            }));
+        }
+    }
+
+    /**
+     * Экран с контроллером; если фоновая загрузка еще идет, дожидается ее.
+     */
+    @SuppressWarnings("unchecked")
+    public <C> Screen<C> get(String view) throws IOException {
+        long started = System.nanoTime();
+        try {
+            if (!enabled) {
+                return (Screen<C>) load(view);
+            }
+
+            CompletableFuture<Screen<?>> future = screens.computeIfAbsent(view,
+                    v -> CompletableFuture.completedFuture(load(v)));
+            boolean waited = !future.isDone();
+            Screen<C> screen = (Screen<C>) future.join();
+            if (waited) {
+                System.out.println("[APP] Ожидание фоновой загрузки " + view + ": " +
+                        String.format("%.1f мс", (System.nanoTime() - started) / 1_000_000.0));
+            }
+            return screen;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (CompletionException e) {
+            // Неудачная фоновая загрузка не кэшируется: при следующем переходе попробуем снова
+            screens.remove(view);
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            throw e;
+        }
+    }
+
+    private static Screen<?> load(String view) {
+        long started = System.nanoTime();
+        try {
+            FXMLLoader loader = new FXMLLoader(ScreenCache.class.getResource(view));
+            Parent root = loader.load();
+            Screen<?> screen = new Screen<>(root, loader.getController());
+            System.out.println("[APP] Загружен " + view + " (" + Thread.currentThread().getName() + "): " +
+                    String.format("%.1f мс", (System.nanoTime() - started) / 1_000_000.0));
+            return screen;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -27,21 +27,33 @@ public class ConnectionController {
     @FXML
     private CheckBox showCompassCheckBox;
 
+    @FXML
+    private CheckBox spectatorCheckBox;
+
     private MainApp mainApp;
     private NetworkService networkService;
 
     private static boolean showCompass = true;
+    private static boolean spectator = false;
     private static String name;
     private static String ip = "localhost";
     private static String portText = "5556";
 
     @FXML
     private void initialize() {
+        reset();
+    }
+
+    // Экран переиспользуется: перед каждым показом - сохраненные значения и доступная кнопка
+    public void reset() {
         // Загрузка сохраненных значений
         ipField.setText(ip);
         portField.setText(portText);
         nameField.setText(name != null ? name : "");
         showCompassCheckBox.setSelected(showCompass);
+        spectatorCheckBox.setSelected(spectator);
+        statusLabel.setText("");
+        connectButton.setDisable(false);
     }
 
     public void setMainApp(MainApp mainApp) {
@@ -58,6 +70,7 @@ public class ConnectionController {
         portText = portField.getText().trim();
         name = nameField.getText().trim();
         showCompass = showCompassCheckBox.isSelected();
+        spectator = spectatorCheckBox.isSelected();
 
         if (name.isEmpty()) {
             statusLabel.setText("Введите имя игрока");
@@ -87,7 +100,7 @@ public class ConnectionController {
         new Thread(() -> {
             boolean connected = networkService.connect(ip, port);
             if (connected) {
-                networkService.sendConnect(name);
+                networkService.sendConnect(name, spectator);
             } else {
                 javafx.application.Platform.runLater(() -> {
                     connectButton.setDisable(false);
@@ -1,12 +1,12 @@
 package client.controllers;
 
 import client.MainApp;
+import client.ColorPalette;
 import client.NetworkService;
 import common.*;
 import javafx.animation.AnimationTimer;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
-import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
@@ -19,6 +19,7 @@ import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.util.Duration;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -78,15 +79,24 @@ public class GameController {
     private int currentRound;
     private double roundTimeLeft;
     private double roundDuration;
-    private String currentTargetColor = "";
+    private byte currentTargetColor = GameSettings.NO_COLOR;
 
     private boolean isRoundActive;
     private boolean gameStarted;
     private boolean isAlive = true;
 
+    // Наблюдатель не управляет игроком: клавиши двигают камеру, playerX/playerY - ее центр
+    private boolean spectator = false;
+
     private double playerX = GameSettings.WORLD_WIDTH / 2;
     private double playerY = GameSettings.WORLD_HEIGHT / 2;
-    private byte[] field;
+    // Поле хранится чанками и генерируется из seed по мере обращения к клеткам
+    private FieldGrid field;
+    private ColorDistanceField distanceField;
+
+    // Камера: левый верхний угол видимой области в координатах мира
+    private double cameraX = 0;
+    private double cameraY = 0;
 
     private Timeline fullScreenCountdownTimeline;
     private double targetDirectionAngle = 0;
@@ -95,6 +105,9 @@ public class GameController {
 
     private AnimationTimer gameLoop;
 
+    // Исходные подписи из FXML для сброса экрана перед повторным показом
+    private final Map<Label, String[]> labelDefaults = new HashMap<>();
+
     public GameController() {
         this.app = null;
         this.networkService = null;
@@ -106,14 +119,65 @@ public class GameController {
         gc = gameCanvas.getGraphicsContext2D();
         compassGc = compassCanvas.getGraphicsContext2D();
 
-        // Запуск игрового цикла
-        startGameLoop();
-
         // Установка обработчиков клавиш
         setupKeyHandlers();
 
-        // Запуск анимации компаса
-        startCompassAnimation();
+        for (Label label : new Label[]{roundLabel, playersLabel, timerLabel, colorLabel, statusLabel}) {
+            labelDefaults.put(label, new String[]{label.getText(), label.getStyle()});
+        }
+    }
+
+    /**
+     * Запуск игрового цикла и анимации компаса при показе экрана; останавливает их cleanup().
+     * Вызывается после установки сцены: FXML мог загружаться в фоне, и до этого холсту
+     * некуда отдавать фокус.
+     */
+    public void start() {
+        gameCanvas.requestFocus();
+        if (gameLoop == null) {
+            startGameLoop();
+        } else {
+            gameLoop.start();
+        }
+        if (compassAnimation == null) {
+            startCompassAnimation();
+        }
+    }
+
+    /**
+     * Экран переиспользуется между матчами: состояние возвращается к только что загруженному.
+     */
+    public void reset() {
+        compassAngle = 0;
+        playerAngle = 0;
+        matchStartCountdown = 0;
+        isMatchStarting = false;
+        players.clear();
+        pressedKeys.clear();
+        playerId = null;
+        currentRound = 0;
+        roundTimeLeft = 0;
+        roundDuration = 0;
+        currentTargetColor = GameSettings.NO_COLOR;
+        isRoundActive = false;
+        gameStarted = false;
+        isAlive = true;
+        spectator = false;
+        playerX = GameSettings.WORLD_WIDTH / 2;
+        playerY = GameSettings.WORLD_HEIGHT / 2;
+        field = null;
+        distanceField = null;
+        cameraX = 0;
+        cameraY = 0;
+        targetDirectionAngle = 0;
+        hasValidDirection = false;
+
+        fullScreenCountdown.setVisible(false);
+        labelDefaults.forEach((label, defaults) -> {
+            label.setText(defaults[0]);
+            label.setStyle(defaults[1]);
+        });
+        setShowCompass(true);
     }
 
     private void startGameLoop() {
@@ -153,12 +217,6 @@ public class GameController {
                 System.out.println("[KEY] Canvas получил фокус");
             }
         });
-
-        // Устанавливаем фокус при загрузке
-        Platform.runLater(() -> {
-            gameCanvas.requestFocus();
-            System.out.println("[KEY] Фокус установлен на gameCanvas после загрузки");
-        });
     }
 
     public void setMainApp(MainApp mainApp) {
@@ -170,6 +228,7 @@ public class GameController {
     }
 
     public void setShowCompass(boolean showCompass) {
+        showCompass = showCompass && !spectator;
         this.showCompass = showCompass;
         compassCanvas.setVisible(showCompass);
         compassCanvas.setManaged(showCompass);
@@ -179,6 +238,14 @@ public class GameController {
         this.playerId = playerId;
     }
 
+    public void setSpectator(boolean spectator) {
+        this.spectator = spectator;
+        if (spectator) {
+            isAlive = false;
+            setShowCompass(false);
+        }
+    }
+
     public void updateGameState(Message message) {
         currentRound = message.getRound();
         roundTimeLeft = message.getTimeLeft();
@@ -188,9 +255,7 @@ public class GameController {
         gameStarted = message.isGameStarted();
         matchStartCountdown = message.getMatchStartCountdown();
 
-        if (message.getField() != null) {
-            field = message.getField();
-        }
+        applyField(message);
 
         // Обработка счетчика матча
         if (matchStartCountdown > 0 && !gameStarted) {
@@ -209,7 +274,7 @@ public class GameController {
         if (message.getPlayers() != null) {
             for (Player p : message.getPlayers()) {
                 count++;
-                if (!p.getId().equals(playerId)) {
+                if (spectator || !p.getId().equals(playerId)) {
                     players.put(p.getId(), p);
                 } else {
                     playerX = p.getX();
@@ -218,79 +283,103 @@ public class GameController {
                 }
             }
         }
-        playersLabel.setText("Игроков: " + count);
+        // В players приходят только ближайшие игроки, общее число - отдельным счетчиком
+        setText(playersLabel, "Игроков: " + Math.max(count, message.getTotalPlayers()));
 
         // Обновление UI в зависимости от состояния
-        if (isMatchStarting) {
-            roundLabel.setText("Старт через: " + String.format("%.1f", matchStartCountdown));
-            statusLabel.setText("Ожидание начала матча...");
-            statusLabel.setStyle("-fx-text-fill: #2980b9;");
+        if (spectator) {
+            setText(roundLabel, gameStarted ? "Раунд: " + currentRound
+                    : String.format("Старт через: %.1f", matchStartCountdown));
+            setText(timerLabel, gameStarted && isRoundActive ? String.format("Время: %.1f", roundTimeLeft) : "");
+            setText(statusLabel, "Наблюдение. В игре: " + message.getAlivePlayers());
+            setStyle(statusLabel, "-fx-text-fill: #7f8c8d;");
+        } else if (isMatchStarting) {
+            setText(roundLabel, "Старт через: " + String.format("%.1f", matchStartCountdown));
+            setText(statusLabel, "Ожидание начала матча...");
+            setStyle(statusLabel, "-fx-text-fill: #2980b9;");
         } else if (gameStarted) {
-            roundLabel.setText("Раунд: " + currentRound);
+            setText(roundLabel, "Раунд: " + currentRound);
             if (isRoundActive) {
-                timerLabel.setText(String.format("Время: %.1f", roundTimeLeft));
-                timerLabel.setStyle("-fx-text-fill: red;");
-                statusLabel.setText("Встаньте на " + currentTargetColor);
-                statusLabel.setStyle("-fx-text-fill: #2c3e50;");
+                setText(timerLabel, String.format("Время: %.1f", roundTimeLeft));
+                setStyle(timerLabel, "-fx-text-fill: red;");
+                setText(statusLabel, "Встаньте на " + GameSettings.ROUND_COLORS[currentTargetColor]);
+                setStyle(statusLabel, "-fx-text-fill: #2c3e50;");
             } else {
-                statusLabel.setText(isAlive ? "Вы выжили!" : "Вы проиграли!");
-                statusLabel.setStyle("-fx-text-fill: " + (isAlive ? "#27ae60" : "#e74c3c") + ";");
+                setText(statusLabel, isAlive ? "Вы выжили!" : "Вы проиграли!");
+                setStyle(statusLabel, "-fx-text-fill: " + (isAlive ? "#27ae60" : "#e74c3c") + ";");
             }
         }
 
-        if (currentTargetColor != null && !currentTargetColor.isEmpty()) {
-            colorLabel.setText("Цвет: " + currentTargetColor);
-            try {
-                colorLabel.setStyle("-fx-text-fill: " + currentTargetColor + ";");
-            } catch (Exception e) {
-                colorLabel.setStyle("-fx-text-fill: #2c3e50;");
-            }
+        if (GameSettings.isValidColor(currentTargetColor)) {
+            setText(colorLabel, "Цвет: " + GameSettings.ROUND_COLORS[currentTargetColor]);
+            setStyle(colorLabel, "-fx-text-fill: " + GameSettings.ROUND_COLORS[currentTargetColor] + ";");
         }
 
         // После обновления данных обновляем направление к целевому цвету
-        if (gameStarted && isRoundActive && field != null && currentTargetColor != null && !currentTargetColor.isEmpty() && showCompass) {
+        if (gameStarted && isRoundActive && field != null && GameSettings.isValidColor(currentTargetColor) && showCompass) {
             updateTargetDirection();
         }
     }
 
+    // Снимки приходят десятки раз в секунду: подпись меняется, только если изменился текст,
+    // иначе каждый снимок заново запускает разметку
+    private static void setText(Label label, String text) {
+        if (!text.equals(label.getText())) {
+            label.setText(text);
+        }
+    }
+
+    private static void setStyle(Label label, String style) {
+        if (!style.equals(label.getStyle())) {
+            label.setStyle(style);
+        }
+    }
+
     private void updateTargetDirection() {
-        if (field == null || currentTargetColor == null || currentTargetColor.isEmpty() || !isRoundActive) {
+        if (field == null || !GameSettings.isValidColor(currentTargetColor) || !isRoundActive) {
             hasValidDirection = false;
             return;
         }
 
-        double closestDistance = Double.MAX_VALUE;
-        double targetX = playerX;
-        double targetY = playerY;
-
-        for (int y = 0; y < GameSettings.GRID_H; y++) {
-            for (int x = 0; x < GameSettings.GRID_W; x++) {
-                int idx = field[y * GameSettings.GRID_W + x];
-                String spotColor = GameSettings.ROUND_COLORS[idx];
-
-                if (spotColor.equals(currentTargetColor)) {
-                    double spotCenterX = x * GameSettings.CELL_SIZE + GameSettings.CELL_SIZE / 2.0;
-                    double spotCenterY = y * GameSettings.CELL_SIZE + GameSettings.CELL_SIZE / 2.0;
+        int gx = FieldGrid.cellOf(playerX);
+        int gy = FieldGrid.cellOf(playerY);
 
-                    double dx = spotCenterX - playerX;
-                    double dy = spotCenterY - playerY;
-                    double distance = Math.sqrt(dx * dx + dy * dy);
+        // Окно таблицы расстояний - чанки вокруг игрока
+        distanceField.placeAround(field, gx, gy);
 
-                    if (distance < closestDistance) {
-                        closestDistance = distance;
-                        targetX = spotCenterX;
-                        targetY = spotCenterY;
-                    }
-                }
-            }
+        int target = distanceField.nearestCell(currentTargetColor, gx, gy);
+        if (target == ColorDistanceField.NONE) {
+            hasValidDirection = false;
+            return;
         }
 
+        double targetX = (target % field.getWidth()) * GameSettings.CELL_SIZE + GameSettings.CELL_SIZE / 2.0;
+        double targetY = (target / field.getWidth()) * GameSettings.CELL_SIZE + GameSettings.CELL_SIZE / 2.0;
+
         double dx = targetX - playerX;
         double dy = targetY - playerY;
         targetDirectionAngle = Math.atan2(dy, dx);
         hasValidDirection = true;
     }
 
+    // Поле строится локально из размера и seed, присланных сервером
+    private void applyField(Message message) {
+        int width = message.getGridWidth();
+        int height = message.getGridHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        if (field == null || field.getWidth() != width || field.getHeight() != height) {
+            field = new FieldGrid(width, height);
+            distanceField = ColorDistanceField.forField(field);
+            field.generate(message.getFieldSeed());
+        } else if (field.getSeed() != message.getFieldSeed()) {
+            // Окно компаса заметит новый seed и пересчитает таблицы
+            field.generate(message.getFieldSeed());
+        }
+    }
+
     private void showFullScreenCountdown(int startValue) {
         fullScreenCountdown.setVisible(true);
 
@@ -322,6 +411,10 @@ public class GameController {
     }
 
     private void updateGame() {
+        if (spectator) {
+            scrollCamera();
+            return;
+        }
         if (!gameStarted || !isRoundActive || !isAlive || isMatchStarting) {
             return;
         }
@@ -343,47 +436,86 @@ public class GameController {
             compassAngle = smoothAngle(compassAngle, targetAngle, 0.1);
         }
 
-        playerX = Math.max(10, Math.min(playerX + dx, GameSettings.WORLD_WIDTH - 10));
-        playerY = Math.max(10, Math.min(playerY + dy, GameSettings.WORLD_HEIGHT - 10));
+        double worldWidth = field != null ? field.getPixelWidth() : GameSettings.WORLD_WIDTH;
+        double worldHeight = field != null ? field.getPixelHeight() : GameSettings.WORLD_HEIGHT;
+        playerX = Math.max(10, Math.min(playerX + dx, worldWidth - 10));
+        playerY = Math.max(10, Math.min(playerY + dy, worldHeight - 10));
 
         if (dx != 0 || dy != 0) {
             networkService.sendMove(playerX, playerY);
         }
     }
 
+    // Свободная камера наблюдателя
+    private void scrollCamera() {
+        double speed = GameSettings.MOVE_SPEED * 3;
+        double dx = 0, dy = 0;
+
+        if (pressedKeys.contains(KeyCode.W) || pressedKeys.contains(KeyCode.UP)) dy -= speed;
+        if (pressedKeys.contains(KeyCode.S) || pressedKeys.contains(KeyCode.DOWN)) dy += speed;
+        if (pressedKeys.contains(KeyCode.A) || pressedKeys.contains(KeyCode.LEFT)) dx -= speed;
+        if (pressedKeys.contains(KeyCode.D) || pressedKeys.contains(KeyCode.RIGHT)) dx += speed;
+
+        double worldWidth = field != null ? field.getPixelWidth() : GameSettings.WORLD_WIDTH;
+        double worldHeight = field != null ? field.getPixelHeight() : GameSettings.WORLD_HEIGHT;
+        playerX = Math.max(0, Math.min(playerX + dx, worldWidth));
+        playerY = Math.max(0, Math.min(playerY + dy, worldHeight));
+    }
+
     private void renderGame() {
         gc.clearRect(0, 0, gameCanvas.getWidth(), gameCanvas.getHeight());
 
+        double worldWidth = field != null ? field.getPixelWidth() : GameSettings.WORLD_WIDTH;
+        double worldHeight = field != null ? field.getPixelHeight() : GameSettings.WORLD_HEIGHT;
+        updateCamera(worldWidth, worldHeight);
+
+        gc.save();
+        gc.translate(-cameraX, -cameraY);
+
         drawSpots();
         drawPlayers();
-        drawCompass();
 
         gc.setStroke(Color.BLACK);
         gc.setLineWidth(2);
-        gc.strokeRect(0, 0, GameSettings.WORLD_WIDTH, GameSettings.WORLD_HEIGHT);
+        gc.strokeRect(0, 0, worldWidth, worldHeight);
+        gc.restore();
+
+        drawCompass();
     }
 
-    private void drawSpots() {
-        int w = GameSettings.GRID_W;
+    // Камера следует за игроком и не выходит за границы мира
+    private void updateCamera(double worldWidth, double worldHeight) {
+        double viewWidth = gameCanvas.getWidth();
+        double viewHeight = gameCanvas.getHeight();
+        cameraX = Math.max(0, Math.min(playerX - viewWidth / 2, worldWidth - viewWidth));
+        cameraY = Math.max(0, Math.min(playerY - viewHeight / 2, worldHeight - viewHeight));
+    }
+
+    private boolean isInView(double x, double y, double margin) {
+        return x >= cameraX - margin && x <= cameraX + gameCanvas.getWidth() + margin
+                && y >= cameraY - margin && y <= cameraY + gameCanvas.getHeight() + margin;
+    }
 
+    private void drawSpots() {
         if (field == null) {
             drawAllGray();
             return;
         }
 
-        for (int y = 0; y < GameSettings.GRID_H; y++) {
-            for (int x = 0; x < GameSettings.GRID_W; x++) {
-                int idx = field[y * w + x];
-                String cellColor = GameSettings.ROUND_COLORS[idx];
+        // Рисуем только клетки, попадающие в камеру
+        int x0 = Math.max(0, FieldGrid.cellOf(cameraX));
+        int y0 = Math.max(0, FieldGrid.cellOf(cameraY));
+        int x1 = Math.min(field.getWidth() - 1, FieldGrid.cellOf(cameraX + gameCanvas.getWidth()));
+        int y1 = Math.min(field.getHeight() - 1, FieldGrid.cellOf(cameraY + gameCanvas.getHeight()));
+
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                byte idx = field.get(x, y);
 
-                if (!isRoundActive && !cellColor.equalsIgnoreCase(currentTargetColor)) {
+                if (!isRoundActive && idx != currentTargetColor) {
                     gc.setFill(Color.GRAY);
                 } else {
-                    try {
-                        gc.setFill(Color.web(cellColor));
-                    } catch (Exception e) {
-                        gc.setFill(Color.LIGHTGRAY);
-                    }
+                    gc.setFill(ColorPalette.of(idx));
                 }
 
                 gc.fillRect(
@@ -398,20 +530,12 @@ public class GameController {
 
     private void drawAllGray() {
         gc.setFill(Color.LIGHTGRAY);
-        for (int y = 0; y < GameSettings.GRID_H; y++) {
-            for (int x = 0; x < GameSettings.GRID_W; x++) {
-                gc.fillRect(
-                        x * GameSettings.CELL_SIZE,
-                        y * GameSettings.CELL_SIZE,
-                        GameSettings.CELL_SIZE,
-                        GameSettings.CELL_SIZE
-                );
-            }
-        }
+        gc.fillRect(cameraX, cameraY, gameCanvas.getWidth(), gameCanvas.getHeight());
     }
 
     private void drawPlayers() {
         for (Player p : players.values()) {
+            if (!isInView(p.getX(), p.getY(), 20)) continue;
             gc.setFill(p.isAlive() ? Color.RED : Color.GRAY);
             double x = p.getX() - 10;
             double y = p.getY() - 10;
@@ -422,6 +546,8 @@ public class GameController {
             gc.strokeOval(x, y, 20, 20);
         }
 
+        if (spectator) return;
+
         gc.setFill(isAlive ? Color.BLUE : Color.GRAY);
         double px = playerX - 10;
         double py = playerY - 10;
@@ -484,11 +610,7 @@ public class GameController {
         } else if (!hasValidDirection) {
             arrowColor = Color.YELLOW;
         } else {
-            try {
-                arrowColor = Color.web(currentTargetColor);
-            } catch (Exception e) {
-                arrowColor = Color.CYAN;
-            }
+            arrowColor = ColorPalette.of(currentTargetColor);
         }
 
         // Стрелка
@@ -534,7 +656,7 @@ public class GameController {
 
     private void startCompassAnimation() {
         compassAnimation = new Timeline(new KeyFrame(Duration.millis(100), e -> {
-            if (gameStarted && isRoundActive && field != null && currentTargetColor != null && !currentTargetColor.isEmpty()) {
+            if (gameStarted && isRoundActive && field != null && GameSettings.isValidColor(currentTargetColor)) {
                 updateTargetDirection();
             }
         }));
@@ -564,7 +686,7 @@ public class GameController {
         roundDuration = message.getDuration();
         roundTimeLeft = roundDuration;
         isRoundActive = true;
-        field = message.getField();
+        applyField(message);
         statusLabel.setText("Играем");
         statusLabel.setStyle("-fx-text-fill: #2c3e50;");
     }
@@ -73,6 +73,9 @@ public class GameOverController {
         // Заполнение таблицы результатов
         if (message.getScores() != null && !message.getScores().isEmpty()) {
             scoresTable.setItems(FXCollections.observableArrayList(message.getScores()));
+        } else {
+            // Экран переиспользуется - не показываем таблицу прошлой игры
+            scoresTable.setItems(FXCollections.observableArrayList());
         }
     }
 
@@ -88,7 +88,7 @@ public class ConnectionScreen extends VBox {
         new Thread(() -> {
             boolean connected = networkService.connect(ip, port);
             if (connected) {
-                networkService.sendConnect(name);
+                networkService.sendConnect(name, false);
 
             } else {
                 javafx.application.Platform.runLater(() -> {
@@ -0,0 +1,172 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * Поле ближайших клеток заданного цвета (евклидово преобразование расстояний, 8SSEDT).
+ * Для каждого цвета таблица строится один раз на поле за два линейных прохода,
+ * после чего поиск ближайшей клетки цвета из любой точки - чтение из массива.
+ * Таблица покрывает окно width x height с началом в (originX, originY), поэтому
+ * на больших полях ее размер не зависит от размера мира. Окно ставится вокруг клетки
+ * игрока (placeAround): SEARCH_RADIUS_CHUNKS чанков в каждую сторону, не выходя за край поля.
+ */
+public class ColorDistanceField {
+    public static final int NONE = -1;
+
+    private final int width;
+    private final int height;
+
+    // nearest[color][cell] - индекс ближайшей клетки этого цвета или NONE
+    private final int[][] nearest;
+    private final boolean[] ready;
+    private FieldGrid field;
+    private long fieldSeed;
+    private int originX;
+    private int originY;
+
+    public ColorDistanceField(int width, int height, int numColors) {
+        this.width = width;
+        this.height = height;
+        this.nearest = new int[numColors][];
+        this.ready = new boolean[numColors];
+    }
+
+    // Окно поиска для поля этого размера
+    public static ColorDistanceField forField(FieldGrid field) {
+        return new ColorDistanceField(windowSize(field.getWidth()), windowSize(field.getHeight()),
+                GameSettings.ROUND_COLORS.length);
+    }
+
+    // Сторона окна по одной оси: не больше самого поля
+    public static int windowSize(int fieldSize) {
+        return Math.min(fieldSize, (2 * GameSettings.SEARCH_RADIUS_CHUNKS + 1) * FieldGrid.CHUNK_SIZE);
+    }
+
+    // Начало окна по одной оси: с чанка на SEARCH_RADIUS_CHUNKS раньше чанка клетки, но не за краем поля
+    public static int windowOrigin(int cell, int fieldSize, int windowSize) {
+        int origin = (FieldGrid.chunkOf(cell) - GameSettings.SEARCH_RADIUS_CHUNKS) * FieldGrid.CHUNK_SIZE;
+        return Math.max(0, Math.min(origin, fieldSize - windowSize));
+    }
+
+    /**
+     * Ставит окно вокруг клетки (gx, gy). Таблицы сбрасываются, только если сменилось поле
+     * (или его seed) либо окно сдвинулось на другой чанк.
+     */
+    public void placeAround(FieldGrid field, int gx, int gy) {
+        int x = windowOrigin(gx, field.getWidth(), width);
+        int y = windowOrigin(gy, field.getHeight(), height);
+        if (field != this.field || field.getSeed() != fieldSeed || x != originX || y != originY) {
+            setField(field, x, y);
+        }
+    }
+
+    /**
+     * Задает поле и положение окна. Таблицы пересчитываются лениво при первом запросе цвета.
+     */
+    public void setField(FieldGrid field, int originX, int originY) {
+        this.field = field;
+        this.fieldSeed = field.getSeed();
+        this.originX = originX;
+        this.originY = originY;
+        Arrays.fill(ready, false);
+    }
+
+    public FieldGrid getField() {
+        return field;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * Индекс в поле (y * ширина поля + x) ближайшей к (gx, gy) клетки цвета colorIndex
+     * или NONE, если в окне такого цвета нет.
+     */
+    public int nearestCell(int colorIndex, int gx, int gy) {
+        if (field == null || colorIndex < 0 || colorIndex >= nearest.length) {
+            return NONE;
+        }
+        int lx = Math.max(0, Math.min(gx - originX, width - 1));
+        int ly = Math.max(0, Math.min(gy - originY, height - 1));
+
+        if (!ready[colorIndex]) {
+            build(colorIndex);
+        }
+        int local = nearest[colorIndex][ly * width + lx];
+        if (local == NONE) return NONE;
+        return (originY + local / width) * field.getWidth() + originX + local % width;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    private void build(int colorIndex) {
+        int[] site = nearest[colorIndex];
+        if (site == null) {
+            site = new int[width * height];
+            nearest[colorIndex] = site;
+        }
+
+        for (int i = 0; i < site.length; i++) {
+            site[i] = field.get(originX + i % width, originY + i / width) == colorIndex ? i : NONE;
+        }
+
+        // Прямой проход: сверху вниз
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                relax(site, x, y, x - 1, y);
+                relax(site, x, y, x - 1, y - 1);
+                relax(site, x, y, x, y - 1);
+                relax(site, x, y, x + 1, y - 1);
+            }
+            for (int x = width - 1; x >= 0; x--) {
+                relax(site, x, y, x + 1, y);
+            }
+        }
+
+        // Обратный проход: снизу вверх
+        for (int y = height - 1; y >= 0; y--) {
+            for (int x = width - 1; x >= 0; x--) {
+                relax(site, x, y, x + 1, y);
+                relax(site, x, y, x + 1, y + 1);
+                relax(site, x, y, x, y + 1);
+                relax(site, x, y, x - 1, y + 1);
+            }
+            for (int x = 0; x < width; x++) {
+                relax(site, x, y, x - 1, y);
+            }
+        }
+
+        ready[colorIndex] = true;
+    }
+
+    // Берем ближайшую клетку соседа, если она ближе текущей
+    private void relax(int[] site, int x, int y, int nx, int ny) {
+        if (nx < 0 || ny < 0 || nx >= width || ny >= height) return;
+
+        int candidate = site[ny * width + nx];
+        if (candidate == NONE) return;
+
+        int idx = y * width + x;
+        int current = site[idx];
+        if (current == NONE || distSq(x, y, candidate) < distSq(x, y, current)) {
+            site[idx] = candidate;
+        }
+    }
+
+    private int distSq(int x, int y, int cell) {
+        int dx = cell % width - x;
+        int dy = cell / width - y;
+        return dx * dx + dy * dy;
+    }
+}
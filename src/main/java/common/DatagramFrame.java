@@ -0,0 +1,41 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Датаграмма UDP-канала: 8 байт номера и кадр протокола - JSON или сжатый FrameCompression.
+ * Номер растет только у сбрасываемых сообщений одного направления (GAME_STATE сервера, MOVE клиента):
+ * получатель отбрасывает устаревшие и считает пропуски как потери. UDP_HELLO, PING и PONG идут с номером 0.
+ * <p>
+ * Датаграмма больше MAX_SIZE не отправляется: снимок уходит по TCP. Большие датаграммы фрагментируются
+ * на уровне IP и теряются целиком при потере любого фрагмента, поэтому предел невелик.
+ */
+public final class DatagramFrame {
+    public static final int MAX_SIZE = 8192;
+    public static final int HEADER = Long.BYTES;
+
+    private DatagramFrame() {
+    }
+
+    public static ByteBuffer pack(long seq, byte[] frame) {
+        ByteBuffer datagram = ByteBuffer.allocate(HEADER + frame.length);
+        datagram.putLong(seq).put(frame).flip();
+        return datagram;
+    }
+
+    public static ByteBuffer pack(long seq, Message message) {
+        return pack(seq, message.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Принятая датаграмма: position - начало, limit - конец
+    public static long seq(ByteBuffer datagram) {
+        return datagram.getLong(datagram.position());
+    }
+
+    public static String frame(ByteBuffer datagram) {
+        int offset = datagram.position() + HEADER;
+        return new String(datagram.array(), datagram.arrayOffset() + offset, datagram.limit() - offset,
+                StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,178 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * Процедурный генератор поля. Поле полностью задается seed и размером, поэтому клиент
+ * строит его сам, а по сети передается только seed.
+ * <p>
+ * Каждый чанк генерируется независимо: на клетку влияют пятна своего чанка и восьми соседних
+ * (радиус пятна меньше размера чанка), поэтому любой чанк можно построить отдельно и результат
+ * не зависит от порядка генерации. Генератор не выделяет память после создания и не потокобезопасен.
+ */
+public class FieldGenerator {
+    // Плотность как у исходного поля 40x30: на каждый чанк
+    private static final int SMALL_BLOBS_PER_COLOR = 3;
+    private static final int MIN_LARGE_BLOBS = 8;
+    private static final int EXTRA_LARGE_BLOBS = 12;
+    private static final int NOISE_PERCENT = 5;
+
+    private static final int MAX_BLOBS_PER_CHUNK =
+            GameSettings.ROUND_COLORS.length * SMALL_BLOBS_PER_COLOR + MIN_LARGE_BLOBS + EXTRA_LARGE_BLOBS;
+
+    private final int width;
+    private final int height;
+    private final int numColors;
+
+    // Пятна одного чанка: координаты центра в клетках мира, квадрат радиуса, цвет
+    private final int[] blobX = new int[MAX_BLOBS_PER_CHUNK];
+    private final int[] blobY = new int[MAX_BLOBS_PER_CHUNK];
+    private final int[] blobRadius = new int[MAX_BLOBS_PER_CHUNK];
+    private final int[] blobLimitSq = new int[MAX_BLOBS_PER_CHUNK];
+    private final byte[] blobColor = new byte[MAX_BLOBS_PER_CHUNK];
+    private int smallBlobs;
+    private int blobCount;
+
+    private final int[] anchorCells;
+    private int anchorCount;
+    private long state;
+
+    public FieldGenerator(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.numColors = GameSettings.ROUND_COLORS.length;
+        this.anchorCells = new int[numColors];
+    }
+
+    /**
+     * Заполняет out (CHUNK_SIZE * CHUNK_SIZE) содержимым чанка (cx, cy) поля с данным seed.
+     */
+    public void generateChunk(long seed, int cx, int cy, byte[] out) {
+        int x0 = cx * FieldGrid.CHUNK_SIZE;
+        int y0 = cy * FieldGrid.CHUNK_SIZE;
+
+        // Базовый цвет
+        Arrays.fill(out, (byte) 0);
+
+        // 1. Небольшие пятна каждого цвета, 2. крупные пятна - из своего и соседних чанков
+        for (int pass = 0; pass < 2; pass++) {
+            for (int ny = cy - 1; ny <= cy + 1; ny++) {
+                for (int nx = cx - 1; nx <= cx + 1; nx++) {
+                    if (nx < 0 || ny < 0 || nx * FieldGrid.CHUNK_SIZE >= width || ny * FieldGrid.CHUNK_SIZE >= height) {
+                        continue;
+                    }
+                    loadBlobs(seed, nx, ny);
+                    int from = pass == 0 ? 0 : smallBlobs;
+                    int to = pass == 0 ? smallBlobs : blobCount;
+                    for (int b = from; b < to; b++) {
+                        drawBlob(b, x0, y0, out);
+                    }
+                }
+            }
+        }
+
+        // 3. Шум для естественности
+        for (int ly = 0; ly < FieldGrid.CHUNK_SIZE; ly++) {
+            for (int lx = 0; lx < FieldGrid.CHUNK_SIZE; lx++) {
+                long h = mix(seed ^ (((long) (y0 + ly) << 32) | (x0 + lx)));
+                if ((int) ((h >>> 32) % 100) < NOISE_PERCENT) {
+                    out[ly * FieldGrid.CHUNK_SIZE + lx] = (byte) ((h & 0x7fffffffL) % numColors);
+                }
+            }
+        }
+
+        // 4. Гарантия наличия всех цветов: в каждом чанке по одной клетке каждого цвета
+        int usableW = Math.min(FieldGrid.CHUNK_SIZE, width - x0);
+        int usableH = Math.min(FieldGrid.CHUNK_SIZE, height - y0);
+        loadAnchors(seed, cx, cy, usableW * usableH);
+        for (int color = 0; color < anchorCount; color++) {
+            int cell = anchorCells[color];
+            out[(cell / usableW) * FieldGrid.CHUNK_SIZE + cell % usableW] = (byte) color;
+        }
+    }
+
+    // Детерминированно восстанавливает пятна чанка (cx, cy)
+    private void loadBlobs(long seed, int cx, int cy) {
+        state = mix(seed + cx * 0x9E3779B97F4A7C15L + cy * 0xC2B2AE3D27D4EB4FL);
+        int x0 = cx * FieldGrid.CHUNK_SIZE;
+        int y0 = cy * FieldGrid.CHUNK_SIZE;
+
+        int n = 0;
+        for (int color = 0; color < numColors; color++) {
+            for (int i = 0; i < SMALL_BLOBS_PER_COLOR; i++) {
+                int radius = 2 + nextInt(3);
+                setBlob(n++, x0 + nextInt(FieldGrid.CHUNK_SIZE), y0 + nextInt(FieldGrid.CHUNK_SIZE),
+                        radius, radius * radius, (byte) color);
+            }
+        }
+        smallBlobs = n;
+
+        int large = MIN_LARGE_BLOBS + nextInt(EXTRA_LARGE_BLOBS);
+        for (int i = 0; i < large; i++) {
+            int radius = 4 + nextInt(8);
+            // dist <= 0.8 * radius  <=>  25 * dist^2 <= 16 * radius^2
+            setBlob(n++, x0 + nextInt(FieldGrid.CHUNK_SIZE), y0 + nextInt(FieldGrid.CHUNK_SIZE),
+                    radius, 16 * radius * radius, (byte) nextInt(numColors));
+        }
+        blobCount = n;
+    }
+
+    // Различные клетки-якоря для каждого цвета внутри используемой части чанка
+    private void loadAnchors(long seed, int cx, int cy, int usableCells) {
+        state = mix(~seed + cx * 0xD6E8FEB86659FD93L + cy * 0xA0761D6478BD642FL);
+        anchorCount = Math.min(numColors, usableCells);
+        for (int color = 0; color < anchorCount; color++) {
+            int cell;
+            boolean taken;
+            do {
+                cell = nextInt(usableCells);
+                taken = false;
+                for (int prev = 0; prev < color && !taken; prev++) {
+                    taken = anchorCells[prev] == cell;
+                }
+            } while (taken);
+            anchorCells[color] = cell;
+        }
+    }
+
+    private void setBlob(int i, int x, int y, int radius, int limitSq, byte color) {
+        blobX[i] = x;
+        blobY[i] = y;
+        blobRadius[i] = radius;
+        blobLimitSq[i] = limitSq;
+        blobColor[i] = color;
+    }
+
+    private void drawBlob(int b, int x0, int y0, byte[] out) {
+        int radius = blobRadius[b];
+        int fromX = Math.max(blobX[b] - radius, x0);
+        int toX = Math.min(blobX[b] + radius, Math.min(x0 + FieldGrid.CHUNK_SIZE, width) - 1);
+        int fromY = Math.max(blobY[b] - radius, y0);
+        int toY = Math.min(blobY[b] + radius, Math.min(y0 + FieldGrid.CHUNK_SIZE, height) - 1);
+        boolean large = b >= smallBlobs;
+
+        for (int y = fromY; y <= toY; y++) {
+            int dy = y - blobY[b];
+            for (int x = fromX; x <= toX; x++) {
+                int dx = x - blobX[b];
+                int distSq = dx * dx + dy * dy;
+                if ((large ? 25 * distSq : distSq) <= blobLimitSq[b]) {
+                    out[(y - y0) * FieldGrid.CHUNK_SIZE + (x - x0)] = blobColor[b];
+                }
+            }
+        }
+    }
+
+    // SplitMix64
+    private int nextInt(int bound) {
+        state += 0x9E3779B97F4A7C15L;
+        long z = mix(state);
+        return (int) (((z >>> 32) * bound) >>> 32);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
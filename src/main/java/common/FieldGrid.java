@@ -0,0 +1,131 @@
+package common;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Игровое поле, хранящееся чанками по CHUNK_SIZE x CHUNK_SIZE клеток.
+ * Содержимое задается seed: чанк генерируется при первом обращении к нему,
+ * поэтому и сервер, и клиент строят только те части большого мира, которые используют.
+ * Буферы чанков переиспользуются между раундами. Чтение идет без блокировки (боты, подсчет итогов),
+ * поэтому перегенерация помечает чанк, а читатель после чтения клетки перепроверяет его поколение.
+ */
+public class FieldGrid {
+    public static final int CHUNK_SIZE = 32;
+    public static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+
+    private final int width;
+    private final int height;
+    private final int chunksX;
+    private final int chunksY;
+    private final byte[][] chunks;
+    private final FieldGenerator generator;
+
+    // Номер поколения поля, для которого сгенерирован чанк; WRITING - буфер перезаписывается
+    private static final int WRITING = -1;
+    private final AtomicIntegerArray chunkGeneration;
+    private volatile int generation = 0;
+    private volatile long seed;
+
+    public FieldGrid(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Некорректный размер поля: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.chunksX = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunksY = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunks = new byte[chunksX * chunksY][];
+        this.chunkGeneration = new AtomicIntegerArray(chunksX * chunksY);
+        this.generator = new FieldGenerator(width, height);
+    }
+
+    /**
+     * Задает новое поле. Чанки будут пересчитаны при следующем обращении.
+     */
+    public synchronized void generate(long seed) {
+        this.seed = seed;
+        generation++;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // Размер в клетках
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Размер в пикселях
+    public double getPixelWidth() {
+        return width * (double) GameSettings.CELL_SIZE;
+    }
+
+    public double getPixelHeight() {
+        return height * (double) GameSettings.CELL_SIZE;
+    }
+
+    public boolean contains(int gx, int gy) {
+        return gx >= 0 && gy >= 0 && gx < width && gy < height;
+    }
+
+    /**
+     * Цвет клетки или NO_COLOR, если клетка вне поля или поле еще не задано.
+     */
+    public byte get(int gx, int gy) {
+        if (!contains(gx, gy)) return GameSettings.NO_COLOR;
+
+        int ci = (gy / CHUNK_SIZE) * chunksX + gx / CHUNK_SIZE;
+        int offset = (gy % CHUNK_SIZE) * CHUNK_SIZE + gx % CHUNK_SIZE;
+        while (true) {
+            int current = generation;
+            if (current == 0) return GameSettings.NO_COLOR;
+            if (chunkGeneration.get(ci) != current) {
+                generateChunk(ci);
+                continue;
+            }
+
+            byte color = chunks[ci][offset];
+            // Чанк мог начать перегенерироваться для нового поля, пока читалась клетка
+            VarHandle.acquireFence();
+            if (chunkGeneration.get(ci) == current) return color;
+        }
+    }
+
+    /**
+     * Цвет клетки под точкой (x, y) в пикселях; точки за краем относятся к крайним клеткам.
+     */
+    public byte colorAt(double x, double y) {
+        int gx = Math.max(0, Math.min((int) (x / GameSettings.CELL_SIZE), width - 1));
+        int gy = Math.max(0, Math.min((int) (y / GameSettings.CELL_SIZE), height - 1));
+        return get(gx, gy);
+    }
+
+    private synchronized void generateChunk(int ci) {
+        int current = generation;
+        if (chunkGeneration.get(ci) == current) return;
+
+        if (chunks[ci] == null) {
+            chunks[ci] = new byte[CHUNK_CELLS];
+        } else {
+            // Метка должна стать видна читателям раньше новых данных
+            chunkGeneration.set(ci, WRITING);
+            VarHandle.storeStoreFence();
+        }
+        generator.generateChunk(seed, ci % chunksX, ci / chunksX, chunks[ci]);
+        chunkGeneration.set(ci, current);
+    }
+
+    public static int chunkOf(int cell) {
+        return cell / CHUNK_SIZE;
+    }
+
+    public static int cellOf(double pixel) {
+        return (int) Math.floor(pixel / GameSettings.CELL_SIZE);
+    }
+}
@@ -0,0 +1,110 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие больших кадров протокола. Кадр - строка JSON; если она длиннее THRESHOLD, в сокет уходит
+ * '~' и Base64 от deflate (без заголовка zlib) с общим словарем - ключами и типичными значениями
+ * снимков и итогов матча. Base64 сохраняет построчное деление потока, поэтому чтение кадров не меняется:
+ * строка с '{' - JSON как раньше, строка с '~' - сжатый JSON. Каждый кадр сжимается отдельно.
+ * <p>
+ * Клиент предлагает сжатие полем compression в CONNECT/RESUME, сервер подтверждает его в ответе
+ * и с этого момента сжимает большие кадры этого соединения. Клиент разбирает сжатые кадры всегда.
+ * <p>
+ * Экземпляр хранит Deflater/Inflater и не потокобезопасен: один на соединение и поток.
+ */
+public final class FrameCompression {
+    public static final String DEFLATE = "deflate";
+    // Кадры короче (байт JSON) уходят как есть: MOVE, CONNECT, ROUND_START не сжимаются
+    public static final int THRESHOLD = 256;
+
+    private static final char MARKER = '~';
+    // Самые частые фрагменты - в конце словаря: deflate дотягивается до них короче
+    private static final byte[] DICTIONARY = ("{\"type\":\"" + MessageTypes.GAME_OVER + "\",\"winner\":\"\",\"scores\":[" +
+            "{\"playerName\":\"Игрок \",\"wins\":1},{\"playerName\":\"Бот \",\"wins\":0}]}" +
+            "{\"type\":\"" + MessageTypes.PLAYER_ELIMINATED + "\",\"winner\":\"Вы проиграли!\",\"scores\":[]}" +
+            "{\"type\":\"" + MessageTypes.GAME_STATE + "\",\"targetColor\":0,\"round\":1,\"timeLeft\":0.0," +
+            "\"duration\":10.0,\"gameStarted\":true,\"isRoundActive\":true,\"players\":[" +
+            "],\"totalPlayers\":0,\"alivePlayers\":0,\"matchStartCountdown\":10.0," +
+            "\"gridWidth\":0,\"gridHeight\":0,\"fieldSeed\":-" +
+            "{\"id\":0,\"name\":\"Бот \",\"x\":0.0,\"y\":0.0,\"alive\":false}," +
+            "{\"id\":1,\"name\":\"Игрок \",\"x\":0.0,\"y\":0.0,\"alive\":true},")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final Inflater inflater = new Inflater(true);
+    private byte[] buffer = new byte[4096];
+
+    public static boolean isCompressed(String frame) {
+        return !frame.isEmpty() && frame.charAt(0) == MARKER;
+    }
+
+    /**
+     * Кадр для отправки из JSON в UTF-8: короткий или несжимаемый JSON возвращается тем же массивом.
+     */
+    public byte[] encode(byte[] json) {
+        if (json.length < THRESHOLD) return json;
+
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(json);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+
+        // Base64 добавляет треть: выигрыша может не остаться
+        int encodedLength = 1 + (length + 2) / 3 * 4;
+        if (encodedLength >= json.length) return json;
+
+        byte[] frame = new byte[encodedLength];
+        frame[0] = MARKER;
+        ByteBuffer encoded = Base64.getEncoder().encode(ByteBuffer.wrap(buffer, 0, length));
+        encoded.get(frame, 1, encoded.remaining());
+        return frame;
+    }
+
+    /**
+     * JSON из принятого кадра; несжатый кадр возвращается как есть.
+     */
+    public String decode(String frame) {
+        if (!isCompressed(frame)) return frame;
+
+        byte[] input;
+        try {
+            input = Base64.getDecoder().decode(frame.substring(1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Поврежденный сжатый кадр: " + e.getMessage(), e);
+        }
+
+        inflater.reset();
+        inflater.setDictionary(DICTIONARY);
+        inflater.setInput(input);
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int inflated = inflater.inflate(buffer, length, buffer.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Сжатый кадр оборван");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Поврежденный сжатый кадр: " + e.getMessage(), e);
+        }
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+}
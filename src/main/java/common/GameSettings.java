@@ -7,9 +7,25 @@ public class GameSettings {
 
     public static final int CELL_SIZE = 20;
 
+    // Размер поля по умолчанию. Сервер может задать другой (режим большого мира),
+    // клиент берет фактический размер из gridWidth/gridHeight в сообщениях
     public static final int GRID_W = WORLD_WIDTH / CELL_SIZE;
     public static final int GRID_H = WORLD_HEIGHT / CELL_SIZE;
 
+    // Радиус (в чанках) окна вокруг игрока, в котором ищется ближайшая клетка целевого цвета:
+    // компас клиента и цели ботов. Поле целиком строится из seed, окно ограничивает только поиск
+    public static final int SEARCH_RADIUS_CHUNKS = 1;
+
+    // Область интереса: экран клиента плюс запас (пикселей), размер ячейки индекса игроков
+    public static final int INTEREST_MARGIN = 100;
+    public static final int INTEREST_BUCKET_SIZE = 256;
+
+    // Наблюдатели получают общий снимок комнаты с пониженной частотой (мс)
+    public static final int SPECTATOR_SNAPSHOT_INTERVAL = 500;
+
+    // Сколько (мс) место игрока сохраняется после обрыва соединения
+    public static final int RECONNECT_GRACE_PERIOD = 15000;
+
 
     // Цвета для раундов
     public static final String[] ROUND_COLORS = {
@@ -21,6 +37,13 @@ public class GameSettings {
             "#00FFFF"  // Голубой
     };
 
+    // Индекс "нет цвета" (до начала раунда). Во всей модели цвет - индекс в ROUND_COLORS
+    public static final byte NO_COLOR = -1;
+
+    public static boolean isValidColor(int colorIndex) {
+        return colorIndex >= 0 && colorIndex < ROUND_COLORS.length;
+    }
+
     // Настройки времени
     public static final double INITIAL_ROUND_TIME = 10.0; // секунд
     public static final double MIN_ROUND_TIME = 1.0; // секунд
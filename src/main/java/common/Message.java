@@ -1,7 +1,8 @@
 package common;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -12,7 +13,7 @@ public class Message implements Serializable {
     private String playerName;
     private double x;
     private double y;
-    private String targetColor;
+    private byte targetColor = GameSettings.NO_COLOR;
     private int round;
     private double timeLeft;
     private double duration;
@@ -21,9 +22,31 @@ public class Message implements Serializable {
     private String winner;
     private List<ScoreboardEntry> scores;
     private List<Player> players;
+    private int totalPlayers;
+    private int alivePlayers;
     private double matchStartCountdown;
-    private byte[] field;
+    private int gridWidth;
+    private int gridHeight;
+    private long fieldSeed;
     private String reason;
+    // Только в CONNECT наблюдателя; null не сериализуется и не занимает места в остальных сообщениях
+    private Boolean spectator;
+    // Токен сессии: выдается в CONNECT, предъявляется в RESUME
+    private String sessionToken;
+    // Каталог серверов: адрес узла и его нагрузка (null не сериализуется)
+    private String host;
+    private Integer port;
+    private Integer capacity;
+    private Integer connections;
+    private Boolean draining;
+    // Сжатие больших кадров (FrameCompression): клиент предлагает в CONNECT/RESUME, сервер подтверждает
+    private String compression;
+    // UDP-канал: клиент предлагает его в CONNECT/RESUME, сервер отвечает портом и токеном для UDP_HELLO
+    private Boolean udp;
+    private Integer udpPort;
+    private String udpToken;
+    // PING/PONG: время отправки PING по часам клиента, сервер возвращает его без изменений
+    private Long sentAt;
 
     // Пустой конструктор для Gson
     public Message() {
@@ -74,11 +97,11 @@ public class Message implements Serializable {
         this.y = y;
     }
 
-    public String getTargetColor() {
+    public byte getTargetColor() {
         return targetColor;
     }
 
-    public void setTargetColor(String targetColor) {
+    public void setTargetColor(byte targetColor) {
         this.targetColor = targetColor;
     }
 
@@ -153,6 +176,23 @@ public class Message implements Serializable {
         this.players = players;
     }
 
+    // Всего игроков в комнате (в players - только ближайшие)
+    public int getTotalPlayers() {
+        return totalPlayers;
+    }
+
+    public void setTotalPlayers(int totalPlayers) {
+        this.totalPlayers = totalPlayers;
+    }
+
+    public int getAlivePlayers() {
+        return alivePlayers;
+    }
+
+    public void setAlivePlayers(int alivePlayers) {
+        this.alivePlayers = alivePlayers;
+    }
+
     public double getMatchStartCountdown() {
         return matchStartCountdown;
     }
@@ -161,26 +201,83 @@ public class Message implements Serializable {
         this.matchStartCountdown = matchStartCountdown;
     }
 
-    public byte[] getField() {
-        return field;
+    public int getGridWidth() {
+        return gridWidth;
     }
 
-    public void setField(byte[] field) {
-        this.field = field;
+    public void setGridWidth(int gridWidth) {
+        this.gridWidth = gridWidth;
+    }
+
+    public int getGridHeight() {
+        return gridHeight;
+    }
+
+    public void setGridHeight(int gridHeight) {
+        this.gridHeight = gridHeight;
+    }
+
+    // Поле генерируется из seed и размера (см. FieldGenerator)
+    public long getFieldSeed() {
+        return fieldSeed;
+    }
+
+    public void setFieldSeed(long fieldSeed) {
+        this.fieldSeed = fieldSeed;
     }
 
     public String getReason() { return reason; }
     public void setReason(String reason) { this.reason = reason; }
 
-    // Сериализация/десериализация
-    private static final Gson gson = new Gson();
+    public boolean isSpectator() { return Boolean.TRUE.equals(spectator); }
+    public void setSpectator(boolean spectator) { this.spectator = spectator ? Boolean.TRUE : null; }
+
+    public String getSessionToken() { return sessionToken; }
+    public void setSessionToken(String sessionToken) { this.sessionToken = sessionToken; }
+
+    public String getHost() { return host; }
+    public void setHost(String host) { this.host = host; }
+
+    public int getPort() { return port != null ? port : 0; }
+    public void setPort(int port) { this.port = port; }
+
+    public int getCapacity() { return capacity != null ? capacity : 0; }
+    public void setCapacity(int capacity) { this.capacity = capacity; }
+
+    public int getConnections() { return connections != null ? connections : 0; }
+    public void setConnections(int connections) { this.connections = connections; }
+
+    public boolean isDraining() { return Boolean.TRUE.equals(draining); }
+    public void setDraining(boolean draining) { this.draining = draining ? Boolean.TRUE : null; }
+
+    public String getCompression() { return compression; }
+    public void setCompression(String compression) { this.compression = compression; }
+
+    public boolean isUdp() { return Boolean.TRUE.equals(udp); }
+    public void setUdp(boolean udp) { this.udp = udp ? Boolean.TRUE : null; }
+
+    public int getUdpPort() { return udpPort != null ? udpPort : 0; }
+    public void setUdpPort(int udpPort) { this.udpPort = udpPort; }
+
+    public String getUdpToken() { return udpToken; }
+    public void setUdpToken(String udpToken) { this.udpToken = udpToken; }
+
+    public long getSentAt() { return sentAt != null ? sentAt : 0; }
+    public void setSentAt(long sentAt) { this.sentAt = sentAt; }
+
+    // Сериализация/десериализация: потоковый адаптер пишет только поля своего типа (см. MessageAdapter)
+    private static final MessageAdapter adapter = new MessageAdapter();
 
     public static Message fromJson(String json) {
-        return gson.fromJson(json, Message.class);
+        try {
+            return adapter.fromJson(json);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
     }
 
     public String toJson() {
-        return gson.toJson(this);
+        return adapter.toJson(this);
     }
 
 
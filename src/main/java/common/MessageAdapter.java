@@ -0,0 +1,297 @@
+package common;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковая сериализация Message без рефлексии. Для каждого типа из MessageTypes пишутся только
+ * поля, которые этот тип несет (GAME_STATE - без playerId, x, y, winner, reason и т.д.);
+ * type всегда первым. Сообщение неизвестного типа пишется целиком, как раньше писал Gson.
+ * <p>
+ * Чтение принимает любые поля в любом порядке: старый формат (все поля) читается так же.
+ * <p>
+ * id игроков, выданные комнатой (номер слота), пишутся числом: "id":17. Строковое поле
+ * читает число как строку "17" - и здесь, и в рефлексивном Gson.
+ */
+final class MessageAdapter extends TypeAdapter<Message> {
+
+    @Override
+    public void write(JsonWriter out, Message m) throws IOException {
+        if (m == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        String type = m.getType();
+        if (type != null) {
+            out.name("type").value(type);
+        }
+
+        switch (type != null ? type : "") {
+            case MessageTypes.GAME_STATE -> writeGameState(out, m);
+            case MessageTypes.MOVE -> {
+                out.name("x").value(m.getX());
+                out.name("y").value(m.getY());
+            }
+            case MessageTypes.ROUND_START, MessageTypes.MATCH_START -> {
+                out.name("targetColor").value(m.getTargetColor());
+                out.name("duration").value(m.getDuration());
+                writeFieldInfo(out, m);
+            }
+            case MessageTypes.GAME_OVER, MessageTypes.PLAYER_ELIMINATED -> {
+                writeString(out, "winner", m.getWinner());
+                writeScores(out, m.getScores());
+            }
+            case MessageTypes.CONNECT, MessageTypes.RESUME -> {
+                writeId(out, "playerId", m.getPlayerId());
+                writeString(out, "playerName", m.getPlayerName());
+                if (m.isSpectator()) out.name("spectator").value(true);
+                writeString(out, "sessionToken", m.getSessionToken());
+                writeString(out, "compression", m.getCompression());
+                writeUdp(out, m);
+            }
+            case MessageTypes.DISCONNECT -> writeId(out, "playerId", m.getPlayerId());
+            case MessageTypes.UDP_HELLO -> writeString(out, "udpToken", m.getUdpToken());
+            case MessageTypes.PING, MessageTypes.PONG -> out.name("sentAt").value(m.getSentAt());
+            case MessageTypes.JOIN_REJECTED -> writeString(out, "reason", m.getReason());
+            case MessageTypes.REDIRECT -> {
+                writeString(out, "host", m.getHost());
+                out.name("port").value(m.getPort());
+            }
+            case MessageTypes.NODE_STATUS -> {
+                writeString(out, "host", m.getHost());
+                out.name("port").value(m.getPort());
+                out.name("totalPlayers").value(m.getTotalPlayers());
+                out.name("capacity").value(m.getCapacity());
+                out.name("connections").value(m.getConnections());
+                out.name("gameStarted").value(m.isGameStarted());
+                if (m.isDraining()) out.name("draining").value(true);
+            }
+            default -> writeAll(out, m);
+        }
+        out.endObject();
+    }
+
+    private static void writeGameState(JsonWriter out, Message m) throws IOException {
+        out.name("targetColor").value(m.getTargetColor());
+        out.name("round").value(m.getRound());
+        out.name("timeLeft").value(m.getTimeLeft());
+        out.name("duration").value(m.getDuration());
+        out.name("gameStarted").value(m.isGameStarted());
+        out.name("isRoundActive").value(m.isIsRoundActive());
+        writePlayers(out, m.getPlayers());
+        out.name("totalPlayers").value(m.getTotalPlayers());
+        out.name("alivePlayers").value(m.getAlivePlayers());
+        out.name("matchStartCountdown").value(m.getMatchStartCountdown());
+        writeFieldInfo(out, m);
+    }
+
+    private static void writeFieldInfo(JsonWriter out, Message m) throws IOException {
+        out.name("gridWidth").value(m.getGridWidth());
+        out.name("gridHeight").value(m.getGridHeight());
+        out.name("fieldSeed").value(m.getFieldSeed());
+    }
+
+    // Все поля, кроме пустых: для типов, о которых адаптер не знает
+    private static void writeAll(JsonWriter out, Message m) throws IOException {
+        writeId(out, "playerId", m.getPlayerId());
+        writeString(out, "playerName", m.getPlayerName());
+        out.name("x").value(m.getX());
+        out.name("y").value(m.getY());
+        out.name("targetColor").value(m.getTargetColor());
+        out.name("round").value(m.getRound());
+        out.name("timeLeft").value(m.getTimeLeft());
+        out.name("duration").value(m.getDuration());
+        out.name("gameStarted").value(m.isGameStarted());
+        out.name("isRoundActive").value(m.isIsRoundActive());
+        writeString(out, "winner", m.getWinner());
+        writeScores(out, m.getScores());
+        writePlayers(out, m.getPlayers());
+        out.name("totalPlayers").value(m.getTotalPlayers());
+        out.name("alivePlayers").value(m.getAlivePlayers());
+        out.name("matchStartCountdown").value(m.getMatchStartCountdown());
+        writeFieldInfo(out, m);
+        writeString(out, "reason", m.getReason());
+        if (m.isSpectator()) out.name("spectator").value(true);
+        writeString(out, "sessionToken", m.getSessionToken());
+        writeString(out, "host", m.getHost());
+        if (m.getPort() != 0) out.name("port").value(m.getPort());
+        if (m.getCapacity() != 0) out.name("capacity").value(m.getCapacity());
+        if (m.getConnections() != 0) out.name("connections").value(m.getConnections());
+        if (m.isDraining()) out.name("draining").value(true);
+        writeString(out, "compression", m.getCompression());
+        writeUdp(out, m);
+        if (m.getSentAt() != 0) out.name("sentAt").value(m.getSentAt());
+    }
+
+    private static void writeUdp(JsonWriter out, Message m) throws IOException {
+        if (m.isUdp()) out.name("udp").value(true);
+        if (m.getUdpPort() != 0) out.name("udpPort").value(m.getUdpPort());
+        writeString(out, "udpToken", m.getUdpToken());
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    // Десятичное число без ведущих нулей - числом, любой другой id - строкой, как был
+    private static void writeId(JsonWriter out, String name, String id) throws IOException {
+        if (id == null) return;
+        int length = id.length();
+        boolean numeric = length > 0 && length <= 9 && (length == 1 || id.charAt(0) != '0');
+        int value = 0;
+        for (int i = 0; numeric && i < length; i++) {
+            char c = id.charAt(i);
+            numeric = c >= '0' && c <= '9';
+            value = value * 10 + (c - '0');
+        }
+        if (numeric) {
+            out.name(name).value(value);
+        } else {
+            out.name(name).value(id);
+        }
+    }
+
+    private static void writePlayers(JsonWriter out, List<Player> players) throws IOException {
+        out.name("players").beginArray();
+        for (int i = 0, n = players.size(); i < n; i++) {
+            Player p = players.get(i);
+            out.beginObject();
+            writeId(out, "id", p.getId());
+            writeString(out, "name", p.getName());
+            out.name("x").value(p.getX());
+            out.name("y").value(p.getY());
+            out.name("alive").value(p.isAlive());
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    private static void writeScores(JsonWriter out, List<ScoreboardEntry> scores) throws IOException {
+        out.name("scores").beginArray();
+        for (int i = 0, n = scores.size(); i < n; i++) {
+            ScoreboardEntry entry = scores.get(i);
+            out.beginObject();
+            writeString(out, "playerName", entry.getPlayerName());
+            out.name("wins").value(entry.getWins());
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    @Override
+    public Message read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Message m = new Message();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "type" -> m.setType(in.nextString());
+                case "playerId" -> m.setPlayerId(in.nextString());
+                case "playerName" -> m.setPlayerName(in.nextString());
+                case "x" -> m.setX(in.nextDouble());
+                case "y" -> m.setY(in.nextDouble());
+                case "targetColor" -> m.setTargetColor((byte) in.nextInt());
+                case "round" -> m.setRound(in.nextInt());
+                case "timeLeft" -> m.setTimeLeft(in.nextDouble());
+                case "duration" -> m.setDuration(in.nextDouble());
+                case "gameStarted" -> m.setGameStarted(in.nextBoolean());
+                case "isRoundActive" -> m.setIsRoundActive(in.nextBoolean());
+                case "winner" -> m.setWinner(in.nextString());
+                case "scores" -> m.setScores(readScores(in));
+                case "players" -> m.setPlayers(readPlayers(in));
+                case "totalPlayers" -> m.setTotalPlayers(in.nextInt());
+                case "alivePlayers" -> m.setAlivePlayers(in.nextInt());
+                case "matchStartCountdown" -> m.setMatchStartCountdown(in.nextDouble());
+                case "gridWidth" -> m.setGridWidth(in.nextInt());
+                case "gridHeight" -> m.setGridHeight(in.nextInt());
+                case "fieldSeed" -> m.setFieldSeed(in.nextLong());
+                case "reason" -> m.setReason(in.nextString());
+                case "spectator" -> m.setSpectator(in.nextBoolean());
+                case "sessionToken" -> m.setSessionToken(in.nextString());
+                case "host" -> m.setHost(in.nextString());
+                case "port" -> m.setPort(in.nextInt());
+                case "capacity" -> m.setCapacity(in.nextInt());
+                case "connections" -> m.setConnections(in.nextInt());
+                case "draining" -> m.setDraining(in.nextBoolean());
+                case "compression" -> m.setCompression(in.nextString());
+                case "udp" -> m.setUdp(in.nextBoolean());
+                case "udpPort" -> m.setUdpPort(in.nextInt());
+                case "udpToken" -> m.setUdpToken(in.nextString());
+                case "sentAt" -> m.setSentAt(in.nextLong());
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return m;
+    }
+
+    private static List<Player> readPlayers(JsonReader in) throws IOException {
+        List<Player> players = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            Player p = new Player();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "id" -> p.setId(in.nextString());
+                    case "name" -> p.setName(in.nextString());
+                    case "x" -> p.setX(in.nextDouble());
+                    case "y" -> p.setY(in.nextDouble());
+                    case "alive" -> p.setAlive(in.nextBoolean());
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            players.add(p);
+        }
+        in.endArray();
+        return players;
+    }
+
+    private static List<ScoreboardEntry> readScores(JsonReader in) throws IOException {
+        List<ScoreboardEntry> scores = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            ScoreboardEntry entry = new ScoreboardEntry();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "playerName" -> entry.setPlayerName(in.nextString());
+                    case "wins" -> entry.setWins(in.nextInt());
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            scores.add(entry);
+        }
+        in.endArray();
+        return scores;
+    }
+}
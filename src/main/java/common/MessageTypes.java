@@ -11,4 +11,13 @@ public class MessageTypes {
     public static final String GAME_OVER = "GAME_OVER";
     public static final String JOIN_REJECTED = "JOIN_REJECTED";
     public static final String PLAYER_ELIMINATED = "PLAYER_ELIMINATED";
+    // Возобновление сессии после обрыва соединения
+    public static final String RESUME = "RESUME";
+    // Каталог серверов: состояние узла (узел -> каталог) и перенаправление клиента на узел
+    public static final String NODE_STATUS = "NODE_STATUS";
+    public static final String REDIRECT = "REDIRECT";
+    // UDP-канал: привязка адреса по токену из ответа на CONNECT/RESUME и замер задержки
+    public static final String UDP_HELLO = "UDP_HELLO";
+    public static final String PING = "PING";
+    public static final String PONG = "PONG";
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package common;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Время с запуска процесса JVM - для журналов времени старта (первый кадр клиента,
+ * начало приема соединений сервером). Учитывает и время до main: загрузку JVM и классов.
+ */
+public final class ProcessClock {
+    private ProcessClock() {
+    }
+
+    // -1, если ОС не сообщает время запуска процесса
+    public static long millisSinceStart() {
+        return ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis())
+                .orElse(-1L);
+    }
+
+    public static String describe() {
+        long millis = millisSinceStart();
+        return millis >= 0 ? millis + " мс после запуска процесса" : "время запуска процесса неизвестно";
+    }
+}
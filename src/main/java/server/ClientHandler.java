@@ -1,35 +1,105 @@
 package server;
 
+import common.DatagramFrame;
+import common.FrameCompression;
 import common.Message;
 import common.MessageTypes;
 import common.Player;
 
 import java.io.*;
 import java.net.Socket;
+import java.net.SocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.util.UUID;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class ClientHandler implements Runnable, RoomClient {
+    // Ограничения входящих сообщений (в секунду / запас): общее на соединение и по типам
+    private static final double MESSAGE_RATE = 100;
+    private static final double MESSAGE_BURST = 50;
+    private static final double MOVE_RATE = 70;
+    private static final double MOVE_BURST = 30;
+    private static final double JOIN_RATE = 1;
+    private static final double JOIN_BURST = 3;
+    // Клиент шлет PING по UDP раз в секунду; на каждый сервер собирает и отправляет PONG
+    private static final double PING_RATE = 2;
+    private static final double PING_BURST = 3;
+    private static final double OTHER_RATE = 5;
+    private static final double OTHER_BURST = 10;
+
+    // Клиент, у которого за секунду отброшено больше сообщений, отключается
+    private static final int MAX_THROTTLED_PER_SECOND = 300;
+    private static final int MAX_LINE_LENGTH = 16 * 1024;
+
+    // Исходящие сообщения пишет отдельный поток: медленный клиент не задерживает рассылку комнаты.
+    // Переполнение очереди - клиент не успевает читать, соединение закрывается
+    private static final int OUTBOUND_QUEUE_SIZE = 256;
+    private static final int MAX_WRITE_BATCH = 64;
+    // Сжатие больших кадров для клиентов, которые его предлагают; -Dcolorrush.compression=false - выключено
+    private static final boolean COMPRESSION = Boolean.parseBoolean(System.getProperty("colorrush.compression", "true"));
+    // Клиент перестал присылать датаграммы (PING раз в секунду) - снимки возвращаются на TCP, мс
+    private static final long DATAGRAM_TIMEOUT = 5000;
+    private static final String STATE_PREFIX = "{\"type\":\"" + MessageTypes.GAME_STATE + "\"";
 
-public class ClientHandler implements Runnable {
     private final Socket socket;
     private final GameRoom gameRoom;
-    private String playerId;
+    private final ServerMetrics metrics;
+    // null - UDP-канал на сервере выключен
+    private final DatagramTransport datagrams;
+    private final TokenBucket messageLimit = new TokenBucket(MESSAGE_RATE, MESSAGE_BURST);
+    private final Map<String, TokenBucket> typeLimits = new HashMap<>();
+    private final BlockingQueue<String> outbound = new ArrayBlockingQueue<>(OUTBOUND_QUEUE_SIZE);
+    private Thread writerThread;
+    // Задается при входе, если клиент предложил сжатие; дальше им пользуется только поток записи
+    private volatile FrameCompression compression;
+
+    // UDP-канал соединения: адрес после UDP_HELLO, номера снимков и движений. Снимки отправляются
+    // из потока рассылки комнаты под datagramLock, движения принимает поток UDP-канала
+    private final Object datagramLock = new Object();
+    private String datagramToken;
+    private volatile SocketAddress datagramAddress;
+    private volatile long lastDatagramAt;
+    private long stateSeq = 0;
+    private long lastMoveSeq = 0;
+    private FrameCompression datagramCompression;
+    private int throttledInWindow = 0;
+    private long throttleWindowStart = System.nanoTime();
+    private volatile String playerId;
     private String playerName;
-    private boolean running = true;
+    private boolean spectator = false;
+    // Сбрасывается из потока записи и при остановке сервера
+    private volatile boolean running = true;
 
     private OutputStream outputStream;
     private InputStream inputStream;
 
-    public ClientHandler(Socket socket, GameRoom gameRoom) {
+    public ClientHandler(Socket socket, GameRoom gameRoom, ServerMetrics metrics) {
+        this(socket, gameRoom, metrics, null);
+    }
+
+    ClientHandler(Socket socket, GameRoom gameRoom, ServerMetrics metrics, DatagramTransport datagrams) {
         this.socket = socket;
         this.gameRoom = gameRoom;
+        this.metrics = metrics;
+        this.datagrams = datagrams;
     }
 
     private void handleIncomingMessage(Message message) {
+        if (message.getType() == null || !allowMessage(message.getType())) {
+            return;
+        }
+
         switch (message.getType()) {
             case MessageTypes.CONNECT:
                 handleConnect(message);
                 break;
                 
+            case MessageTypes.RESUME:
+                handleResume(message);
+                break;
+
             case MessageTypes.MOVE:
                 handleMove(message);
                 break;
@@ -43,23 +113,37 @@ public class ClientHandler implements Runnable {
     public void run() {
         System.out.println("[SERVER][DEBUG] Начало обработки клиента: " + socket.getInetAddress());
         try {
-            outputStream = socket.getOutputStream();
+            outputStream = new BufferedOutputStream(socket.getOutputStream());
             inputStream = socket.getInputStream();
 
+            writerThread = new Thread(this::writeMessages, "client-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+
             System.out.println("[SERVER][DEBUG] Потоки ввода/вывода созданы");
             gameRoom.registerClient(this);
             processMessages();
         } catch (Exception e) {
-            System.err.println("[SERVER][ERROR] ОШИБКА: " + e.getClass().getSimpleName() + ": " + e.getMessage());
-            e.printStackTrace();
+            // Сокет, закрытый со стороны сервера, - не ошибка
+            if (running) {
+                System.err.println("[SERVER][ERROR] ОШИБКА: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+                e.printStackTrace();
+            }
         } finally {
-            // Удаляем игрока только если он был добавлен
+            // Обрыв соединения: место игрока сохраняется до истечения срока переподключения.
+            // При явном DISCONNECT игрок к этому моменту уже удален
             if (playerId != null && gameRoom != null) {
-                gameRoom.removePlayer(playerId);
+                gameRoom.detachPlayer(playerId, this);
             }
 
             // Отменяем регистрацию клиента
             gameRoom.unregisterClient(this);
+            if (datagrams != null) {
+                datagrams.unregister(datagramToken, datagramAddress, this);
+            }
+            if (spectator) {
+                gameRoom.removeSpectator(this);
+            }
 
             // Закрываем сокет
             try {
@@ -70,6 +154,10 @@ public class ClientHandler implements Runnable {
             } catch (IOException e) {
                 System.err.println("Ошибка при закрытии сокета: " + e.getMessage());
             }
+            if (writerThread != null) {
+                writerThread.interrupt();
+            }
+            metrics.connectionClosed();
 
             System.out.println("[SERVER][DEBUG] Клиент окончательно отключен: " + playerId);
         }
@@ -86,8 +174,15 @@ public class ClientHandler implements Runnable {
 
             currentMessage.append(received);
 
+            // Строка без перевода строки не может расти бесконечно
+            if (currentMessage.length() > MAX_LINE_LENGTH && currentMessage.indexOf("\n") == -1) {
+                System.err.println("[SERVER][ERROR] Слишком длинное сообщение, соединение закрыто");
+                metrics.abusiveDisconnect();
+                return;
+            }
+
             // Обработка сообщений, разделенных переводом строки
-            while (currentMessage.indexOf("\n") != -1) {
+            while (running && currentMessage.indexOf("\n") != -1) {
                 int endIndex = currentMessage.indexOf("\n");
                 String json = currentMessage.substring(0, endIndex).trim();
                 currentMessage.delete(0, endIndex + 1);
@@ -113,72 +208,327 @@ public class ClientHandler implements Runnable {
             return;
         }
 
+        if (message.isSpectator()) {
+            handleSpectate(message);
+            return;
+        }
+
+        if (gameRoom.isDraining()) {
+            System.out.println("[SERVER][DEBUG] Отказ в подключении: сервер завершает работу");
+            rejectJoin("Сервер перезапускается, подключитесь через минуту");
+            return;
+        }
+
         // Проверка: если игра уже началась, отправляем отказ
         if (gameRoom.isGameStarted()) {
             System.out.println("[SERVER][DEBUG] Отказ в подключении: игра уже началась");
-            Message rejection = new Message(MessageTypes.JOIN_REJECTED);
-            rejection.setReason("Невозможно присоединиться: игра уже началась");
-            sendRawMessage(rejection.toJson());
+            rejectJoin("Невозможно присоединиться: игра уже началась");
+            return;
+        }
+
+        if (gameRoom.isFull()) {
+            System.out.println("[SERVER][DEBUG] Отказ в подключении: комната заполнена");
+            rejectJoin("Комната заполнена, попробуйте позже");
             return;
         }
 
         playerName = message.getPlayerName().trim();
-        playerId = UUID.randomUUID().toString();
+        // id выдает комната: короткий номер, который повторяется в каждом снимке
+        Player player = gameRoom.addPlayer(playerName, this);
+        if (player == null) {
+            rejectJoin("Невозможно присоединиться: игра уже началась");
+            return;
+        }
+        playerId = player.getId();
         System.out.println("[SERVER][DEBUG] Новый игрок: " + playerName + " (ID: " + playerId + ")");
 
-        Player player = new Player(playerId, playerName);
-        gameRoom.addPlayer(player);
-
         // Отправка подтверждения подключения
         Message response = new Message(MessageTypes.CONNECT);
         response.setPlayerId(playerId);
         response.setPlayerName(playerName);
+        response.setSessionToken(gameRoom.openSession(playerId));
+        negotiateCompression(message, response);
+        negotiateDatagrams(message, response);
 
         String jsonResponse = response.toJson();
         sendRawMessage(jsonResponse);
     }
 
+    // Наблюдатель может подключиться в любой момент; он не становится игроком
+    private void handleSpectate(Message message) {
+        if (spectator || playerId != null) return;
+
+        playerName = message.getPlayerName().trim();
+        spectator = true;
+        System.out.println("[SERVER][DEBUG] Новый наблюдатель: " + playerName);
+
+        Message response = new Message(MessageTypes.CONNECT);
+        response.setPlayerName(playerName);
+        response.setSpectator(true);
+        negotiateCompression(message, response);
+        negotiateDatagrams(message, response);
+        sendRawMessage(response.toJson());
+
+        gameRoom.addSpectator(this);
+    }
+
+    // Переподключение по токену: игрок получает свое место и один полный снимок состояния
+    private void handleResume(Message message) {
+        if (spectator || playerId != null) return;
+
+        Player player = gameRoom.resumePlayer(message.getSessionToken(), this);
+        if (player == null) {
+            System.out.println("[SERVER][DEBUG] Отказ в переподключении: сессия не найдена");
+            rejectJoin("Сессия истекла, подключитесь заново");
+            return;
+        }
+
+        playerId = player.getId();
+        playerName = player.getName();
+        System.out.println("[SERVER][DEBUG] Игрок переподключился: " + playerName + " (ID: " + playerId + ")");
+
+        Message response = new Message(MessageTypes.RESUME);
+        response.setPlayerId(playerId);
+        response.setPlayerName(playerName);
+        response.setSessionToken(message.getSessionToken());
+        negotiateCompression(message, response);
+        negotiateDatagrams(message, response);
+        sendRawMessage(response.toJson());
+
+        gameRoom.sendSnapshot(this);
+    }
+
+    // Ответ на вход подтверждает сжатие; кадры после него сжимаются, если они больше порога
+    private void negotiateCompression(Message request, Message response) {
+        if (!COMPRESSION || !FrameCompression.DEFLATE.equals(request.getCompression())) return;
+        response.setCompression(FrameCompression.DEFLATE);
+        if (compression == null) {
+            compression = new FrameCompression();
+        }
+    }
+
+    // Токен UDP_HELLO выдается один раз на соединение и повторяется в ответе на RESUME
+    private void negotiateDatagrams(Message request, Message response) {
+        if (datagrams == null || !request.isUdp()) return;
+        synchronized (datagramLock) {
+            if (datagramToken == null) {
+                datagramToken = datagrams.register(this);
+            }
+            response.setUdpPort(datagrams.getPort());
+            response.setUdpToken(datagramToken);
+        }
+    }
+
+    // UDP_HELLO с токеном этого соединения; возвращает прежний адрес
+    SocketAddress bindDatagram(SocketAddress address) {
+        synchronized (datagramLock) {
+            SocketAddress previous = datagramAddress;
+            lastDatagramAt = System.nanoTime();
+            datagramAddress = address;
+            if (!address.equals(previous)) {
+                System.out.println("[SERVER][DEBUG] UDP-канал привязан: " + address + " (" + playerName + ")");
+            }
+            return previous;
+        }
+    }
+
+    // Датаграмма с адреса этого соединения; вызывается потоком UDP-канала
+    void handleDatagram(long seq, Message message) {
+        lastDatagramAt = System.nanoTime();
+        switch (message.getType()) {
+            case MessageTypes.MOVE -> {
+                // Устаревшее движение отбрасывается: следующее все равно несет абсолютную позицию
+                if (seq <= lastMoveSeq) {
+                    metrics.datagramsLost(0, 1);
+                    return;
+                }
+                if (lastMoveSeq > 0) {
+                    metrics.datagramsLost(seq - lastMoveSeq - 1, 0);
+                }
+                lastMoveSeq = seq;
+                if (allowMessage(MessageTypes.MOVE)) {
+                    handleMove(message);
+                }
+            }
+            case MessageTypes.PING -> {
+                if (!allowMessage(MessageTypes.PING)) return;
+                Message pong = new Message(MessageTypes.PONG);
+                pong.setSentAt(message.getSentAt());
+                SocketAddress address = datagramAddress;
+                if (address != null) {
+                    datagrams.send(address, DatagramFrame.pack(0, pong));
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    // Снимок датаграммой; false - UDP не привязан, молчит или снимок слишком велик, отправлять по TCP
+    private boolean sendDatagram(String json) {
+        synchronized (datagramLock) {
+            SocketAddress address = datagramAddress;
+            if (address == null) return false;
+            if (System.nanoTime() - lastDatagramAt > DATAGRAM_TIMEOUT * 1_000_000L) {
+                datagramAddress = null;
+                datagrams.unregister(null, address, this);
+                metrics.datagramFallback();
+                System.out.println("[SERVER][DEBUG] UDP-канал молчит, снимки по TCP: " + playerName);
+                return false;
+            }
+
+            byte[] frame = json.getBytes(StandardCharsets.UTF_8);
+            if (compression != null) {
+                if (datagramCompression == null) {
+                    datagramCompression = new FrameCompression();
+                }
+                frame = datagramCompression.encode(frame);
+            }
+            if (DatagramFrame.HEADER + frame.length > DatagramFrame.MAX_SIZE) {
+                metrics.datagramOversized();
+                return false;
+            }
+            return datagrams.send(address, DatagramFrame.pack(++stateSeq, frame));
+        }
+    }
+
+    private void rejectJoin(String reason) {
+        metrics.joinRejected();
+        Message rejection = new Message(MessageTypes.JOIN_REJECTED);
+        rejection.setReason(reason);
+        sendRawMessage(rejection.toJson());
+    }
+
+    // Сообщения сверх лимита отбрасываются: MOVE содержит абсолютную позицию, следующее его заменит
+    // MOVE приходит и из потока чтения TCP, и из потока UDP-канала
+    private synchronized boolean allowMessage(String type) {
+        if (MessageTypes.DISCONNECT.equals(type)) return true;
+
+        TokenBucket typeLimit = typeLimits.computeIfAbsent(type, ClientHandler::createTypeLimit);
+        if (typeLimit.tryAcquire() && messageLimit.tryAcquire()) {
+            return true;
+        }
+
+        metrics.messageThrottled(type);
+        long now = System.nanoTime();
+        if (now - throttleWindowStart > 1_000_000_000L) {
+            throttleWindowStart = now;
+            throttledInWindow = 0;
+        }
+        if (++throttledInWindow > MAX_THROTTLED_PER_SECOND) {
+            System.err.println("[SERVER][ERROR] Превышен лимит сообщений, соединение закрыто: " + playerId);
+            metrics.abusiveDisconnect();
+            closeSocket();
+        }
+        return false;
+    }
+
+    private static TokenBucket createTypeLimit(String type) {
+        switch (type) {
+            case MessageTypes.MOVE:
+                return new TokenBucket(MOVE_RATE, MOVE_BURST);
+            case MessageTypes.CONNECT:
+            case MessageTypes.RESUME:
+                return new TokenBucket(JOIN_RATE, JOIN_BURST);
+            case MessageTypes.PING:
+                return new TokenBucket(PING_RATE, PING_BURST);
+            default:
+                return new TokenBucket(OTHER_RATE, OTHER_BURST);
+        }
+    }
+
     private void handleMove(Message message) {
         if (playerId != null) {
-            gameRoom.handlePlayerMove(playerId, message.getX(), message.getY());
+            gameRoom.handlePlayerMove(playerId, this, message.getX(), message.getY());
         }
     }
 
+    @Override
     public void sendMessage(Message message) {
+        sendRawMessage(message.toJson());
+    }
+
+    // Уже сериализованное сообщение (общее для нескольких получателей).
+    // Не блокирует: сообщение ставится в очередь потока записи
+    @Override
+    public void sendRawMessage(String message) {
+        if (socket.isClosed()) return;
+        // Снимки - датаграммой, если UDP-канал привязан: потерянный снимок не задерживает следующие
+        if (datagramAddress != null && message.startsWith(STATE_PREFIX) && sendDatagram(message)) return;
+
+        if (!outbound.offer(message)) {
+            System.err.println("[SERVER][ERROR] Клиент не успевает читать, соединение закрыто: " + playerId);
+            metrics.outboundDropped();
+            closeSocket();
+        }
+    }
+
+    // Поток записи: забирает сообщения пачками и сбрасывает буфер один раз на пачку
+    private void writeMessages() {
         try {
-            if (!socket.isClosed() && outputStream != null) {
-                String messageWithNewline = message.toJson() + "\n";
-                byte[] bytes = messageWithNewline.getBytes(StandardCharsets.UTF_8);
-                outputStream.write(bytes);
+            while (!socket.isClosed()) {
+                String message = outbound.take();
+                int batch = 0;
+                do {
+                    byte[] json = message.getBytes(StandardCharsets.UTF_8);
+                    FrameCompression codec = compression;
+                    byte[] frame = codec != null ? codec.encode(json) : json;
+                    metrics.frameSent(json.length, frame.length);
+                    outputStream.write(frame);
+                    outputStream.write('\n');
+                    batch++;
+                } while (batch < MAX_WRITE_BATCH && (message = outbound.poll()) != null);
                 outputStream.flush();
             }
-        } catch (Exception e) {
-            System.err.println("[SERVER][ERROR] Ошибка отправки: " + e.getMessage());
-            disconnect();
+        } catch (InterruptedException e) {
+            // Соединение закрыто
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("[SERVER][ERROR] Ошибка отправки: " + e.getMessage());
+            }
+            closeSocket();
         }
     }
 
-    private void sendRawMessage(String message) {
+    // Игрок перешел на новое соединение: это закрывается без удаления игрока из комнаты
+    @Override
+    public void release() {
+        playerId = null;
+        closeSocket();
+    }
+
+    // Комната удалила игрока (конец матча, выход, истек срок): id больше не наш
+    @Override
+    public void playerRemoved(String removedId) {
+        if (removedId.equals(playerId)) {
+            playerId = null;
+        }
+    }
+
+    // Остановка сервера: поток чтения завершится и сохранит место игрока до следующего запуска
+    void shutdown() {
+        closeSocket();
+    }
+
+    // Ошибка записи: закрываем сокет, поток чтения завершится и сохранит место игрока
+    private void closeSocket() {
+        running = false;
         try {
-            if (!socket.isClosed() && outputStream != null) {
-                String messageWithNewline = message + "\n";
-                byte[] bytes = messageWithNewline.getBytes(StandardCharsets.UTF_8);
-                outputStream.write(bytes);
-                outputStream.flush();
-                System.out.println("[SERVER][DEBUG] Отправлено байт: " + bytes.length);
+            if (!socket.isClosed()) {
+                socket.close();
             }
-        } catch (Exception e) {
-            System.err.println("[SERVER][ERROR] Ошибка отправки: " + e.getMessage());
-            disconnect();
+        } catch (IOException e) {
+            System.err.println("Ошибка при закрытии сокета: " + e.getMessage());
         }
     }
 
+    // Явный выход (DISCONNECT): игрок удаляется сразу
     private void disconnect() {
         running = false;
         try {
             if (playerId != null) {
                 System.out.println("[SERVER][DEBUG] Удаление игрока из комнаты: " + playerId);
-                gameRoom.removePlayer(playerId);
+                gameRoom.removePlayer(playerId, this);
             }
             if (socket != null && !socket.isClosed()) {
                 System.out.println("[SERVER][DEBUG] Закрытие сокета");
@@ -188,6 +538,7 @@ public class ClientHandler implements Runnable {
             System.err.println("Ошибка при отключении клиента: " + e.getMessage());
         }
     }
+    @Override
     public String getPlayerId() {
         return playerId;
     }
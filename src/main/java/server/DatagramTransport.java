@@ -0,0 +1,155 @@
+package server;
+
+import common.DatagramFrame;
+import common.Message;
+import common.MessageTypes;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UDP-канал сервера рядом с TCP: снимки GAME_STATE и MOVE клиентов идут датаграммами, потерянный
+ * снимок не задерживает следующие. CONNECT, ROUND_START, GAME_OVER, выбывания - по-прежнему TCP.
+ * <p>
+ * Привязка адреса: клиент, предложивший UDP, получает в ответе на CONNECT/RESUME токен соединения
+ * и присылает его в UDP_HELLO. Адрес отправителя закрепляется за соединением, ответный UDP_HELLO
+ * подтверждает клиенту, что путь работает в обе стороны. Датаграммы с незнакомых адресов отбрасываются.
+ */
+final class DatagramTransport {
+    private final DatagramChannel channel;
+    private final int port;
+    private final ServerMetrics metrics;
+    private final Map<String, ClientHandler> tokens = new ConcurrentHashMap<>();
+    private final Map<SocketAddress, ClientHandler> addresses = new ConcurrentHashMap<>();
+    private final SecureRandom tokenRandom = new SecureRandom();
+
+    private DatagramTransport(DatagramChannel channel, int port, ServerMetrics metrics) {
+        this.channel = channel;
+        this.port = port;
+        this.metrics = metrics;
+    }
+
+    static DatagramTransport open(int port, ServerMetrics metrics) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new DatagramTransport(channel, port, metrics);
+    }
+
+    void start() {
+        Thread receiver = new Thread(this::receive, "udp-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+        System.out.println("[SERVER] UDP-канал для снимков и движений на порту " + port);
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    // Токен для UDP_HELLO; действует, пока соединение не закрыто
+    String register(ClientHandler handler) {
+        byte[] bytes = new byte[16];
+        tokenRandom.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        tokens.put(token, handler);
+        return token;
+    }
+
+    void unregister(String token, SocketAddress address, ClientHandler handler) {
+        if (token != null) {
+            tokens.remove(token, handler);
+        }
+        if (address != null) {
+            addresses.remove(address, handler);
+        }
+    }
+
+    // Датаграмма не ставится в очередь: UDP не ждет получателя, при переполнении буфера ОС она теряется
+    boolean send(SocketAddress address, ByteBuffer datagram) {
+        try {
+            channel.send(datagram, address);
+            metrics.datagramSent();
+            return true;
+        } catch (IOException e) {
+            System.err.println("[SERVER][ERROR] Ошибка отправки датаграммы: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(DatagramFrame.MAX_SIZE);
+        while (channel.isOpen()) {
+            SocketAddress address;
+            try {
+                buffer.clear();
+                address = channel.receive(buffer);
+                buffer.flip();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                System.err.println("[SERVER][ERROR] Ошибка приема датаграммы: " + e.getMessage());
+                continue;
+            }
+            metrics.datagramReceived();
+            if (buffer.remaining() < DatagramFrame.HEADER) continue;
+
+            Message message;
+            try {
+                message = Message.fromJson(DatagramFrame.frame(buffer));
+            } catch (Exception e) {
+                continue;
+            }
+            if (message == null || message.getType() == null) continue;
+
+            if (MessageTypes.UDP_HELLO.equals(message.getType())) {
+                bind(message.getUdpToken(), address);
+            } else {
+                ClientHandler handler = addresses.get(address);
+                if (handler != null) {
+                    handler.handleDatagram(DatagramFrame.seq(buffer), message);
+                }
+            }
+        }
+    }
+
+    private void bind(String token, SocketAddress address) {
+        ClientHandler handler = token != null ? tokens.get(token) : null;
+        if (handler == null) return;
+
+        SocketAddress previous = handler.bindDatagram(address);
+        if (previous != null && !previous.equals(address)) {
+            addresses.remove(previous, handler);
+        }
+        addresses.put(address, handler);
+        // Соединение могло закрыться между поиском токена и привязкой
+        if (!tokens.containsKey(token)) {
+            addresses.remove(address, handler);
+            return;
+        }
+
+        Message ack = new Message(MessageTypes.UDP_HELLO);
+        ack.setUdpToken(token);
+        send(address, DatagramFrame.pack(0, ack));
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка при закрытии UDP-канала: " + e.getMessage());
+        }
+    }
+}
@@ -1,96 +1,479 @@
 package server;
 
 import common.*;
-import server.db.ScoreboardRepository;
+import server.db.Scoreboard;
+import server.replay.MatchRecorder;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class GameRoom {
-    private final Map<String, Player> players = new ConcurrentHashMap<>();
-    private final Random random = new Random();
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
-    private final ScoreboardRepository scoreboard;
+    // Движения игроков рассылаются не по одному, а не чаще чем раз в STATE_BROADCAST_INTERVAL мс
+    private static final long STATE_BROADCAST_INTERVAL = 33;
+    // Перерыв между раундами, мс
+    public static final long ROUND_BREAK = 2000;
+    // С этого числа слотов итоги раунда считаются в пуле fork-join (см. RoundBenchmark)
+    public static final int PARALLEL_JUDGE_THRESHOLD = 16384;
+
+    // Игроки в массивах по слотам; блокировка таблицы защищает позиции, жизнь и состав
+    private final PlayerTable players;
+    private final PlayerSpatialIndex playerIndex;
+    private final Random random;
+    private final Scheduler timers;
+    private final Scoreboard scoreboard;
 
     // Состояние игры
     private int round = 0;
     private double roundTimeLeft;
     private double roundDuration;
-    private String currentTargetColor;
+    private byte currentTargetColor = GameSettings.NO_COLOR;
     private boolean isRoundActive = false;
     private boolean gameStarted = false;
     private double matchStartCountdown = GameSettings.BASE_MATCH_START_DELAY;
-    private byte[] field; // GRID_W * GRID_H
-
-    // Таймеры
-    private ScheduledFuture<?> roundTimer;
-    private ScheduledFuture<?> matchStartTimer;
+    private final int gridWidth;
+    private final int gridHeight;
+    private final FieldGrid field;
+    private int maxPlayers = Integer.MAX_VALUE;
+
+    // Боты: дополняют лобби до botFill игроков, пока в нем есть хотя бы один человек
+    private final RoomBots bots;
+    private int botFill = 0;
+    private boolean resetting = false;
+    // Сервер останавливается: текущий матч доигрывается, новые не начинаются
+    private volatile boolean draining = false;
+
+    // Таймеры: тики раз в 100 мс, оставшееся время считается от абсолютных сроков (nanoTime)
+    private Scheduler.Timeout roundTimer;
+    private Scheduler.Timeout matchStartTimer;
+    private Scheduler.Timeout roundBreakTimer;
+
+    // Итоги раунда: с какого числа слотов цвета сравниваются параллельно, и время последнего подсчета
+    private int parallelJudgeThreshold = PARALLEL_JUDGE_THRESHOLD;
+    private volatile long lastResolveNanos;
+    // Буферы итогов раунда; растут вместе с таблицей, используются только в endRound
+    private boolean[] eliminatedSlots = new boolean[0];
+    private String[] checkedIds = new String[0];
+    private double[] checkedX = new double[0];
+    private double[] checkedY = new double[0];
+    private boolean[] checkedEliminated = new boolean[0];
+    private final List<RoomClient> eliminatedClients = new ArrayList<>();
+    private volatile long lastNotifyNanos;
+    private long roundDeadline;
+    private long matchStartDeadline;
+    private long lastCountdownTick;
+    private final AtomicBoolean stateBroadcastPending = new AtomicBoolean(false);
+    private volatile long lastStateBroadcast;
+    private final Runnable pendingStateBroadcast = () -> {
+        stateBroadcastPending.set(false);
+        broadcastGameState();
+    };
+
+    // Снимки строятся в буферах комнаты: игроки копируются под блокировкой таблицы в Player из пула,
+    // который переиспользуется между рассылками. Получатель сериализует снимок внутри sendMessage
+    // и не хранит ссылку на него (см. RoomClient)
+    private final Object snapshotLock = new Object();
+    private final Message stateMessage = new Message(MessageTypes.GAME_STATE);
+    private final Message spectatorMessage = new Message(MessageTypes.GAME_STATE);
+    private final ArrayList<Player> snapshotPlayers = new ArrayList<>(64);
+    private final List<Player> snapshotView = Collections.unmodifiableList(snapshotPlayers);
+    private final ArrayList<Player> snapshotPool = new ArrayList<>(64);
+
+    // Запись матчей для воспроизведения; null - запись выключена
+    private Path replayDirectory;
+    private volatile MatchRecorder recorder;
 
     // Для рассылки обновлений
-    private final List<ClientHandler> clients = new CopyOnWriteArrayList<>();
+    private final List<RoomClient> clients = new CopyOnWriteArrayList<>();
+
+    // Наблюдатели: не участвуют в игре, получают один общий снимок комнаты раз в SPECTATOR_SNAPSHOT_INTERVAL
+    private final List<RoomClient> spectators = new CopyOnWriteArrayList<>();
+    private Scheduler.Timeout spectatorTimer;
+
+    // Сессии игроков: токен -> id игрока. При обрыве соединения место игрока сохраняется
+    // на RECONNECT_GRACE_PERIOD, за это время клиент может вернуться по токену
+    private final Map<String, String> sessions = new ConcurrentHashMap<>();
+    private final Map<String, String> sessionTokens = new ConcurrentHashMap<>();
+    private final Map<String, Scheduler.Timeout> detachedPlayers = new ConcurrentHashMap<>();
+    private final SecureRandom tokenRandom = new SecureRandom();
 
-    public GameRoom(ScoreboardRepository scoreboard) {
+    public GameRoom(Scoreboard scoreboard, Scheduler timers) {
+        this(scoreboard, timers, GameSettings.GRID_W, GameSettings.GRID_H);
+    }
+
+    public GameRoom(Scoreboard scoreboard, Scheduler timers, int gridWidth, int gridHeight) {
+        this(scoreboard, timers, gridWidth, gridHeight, new Random());
+    }
+
+    /**
+     * random задает цвета раундов, поля и поведение ботов: с одинаковым seed и виртуальным
+     * планировщиком матч воспроизводится одинаково.
+     */
+    public GameRoom(Scoreboard scoreboard, Scheduler timers, int gridWidth, int gridHeight, Random random) {
         this.scoreboard = scoreboard;
+        this.timers = timers;
+        this.random = random;
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.field = new FieldGrid(gridWidth, gridHeight);
+        this.players = new PlayerTable(field);
+        this.playerIndex = new PlayerSpatialIndex(GameSettings.INTEREST_BUCKET_SIZE,
+                field.getPixelWidth(), field.getPixelHeight());
+        this.bots = new RoomBots(this, players, random);
         generateField();
     }
 
     // Регистрация клиента для рассылки обновлений
-    public void registerClient(ClientHandler client) {
+    public void registerClient(RoomClient client) {
         clients.add(client);
         System.out.println("[ROOM] Зарегистрирован клиент для обновлений. Всего клиентов: " + clients.size());
     }
 
-    public void unregisterClient(ClientHandler client) {
-        clients.remove(client);
-        System.out.println("[ROOM] Удален клиент из обновлений. Всего клиентов: " + clients.size());
+    // Закреплен ли слот игрока за этим соединением
+    private boolean isBound(String playerId, RoomClient client) {
+        synchronized (players) {
+            int slot = players.slotOf(playerId);
+            return slot != PlayerTable.NONE && players.client(slot) == client;
+        }
+    }
+
+    public void unregisterClient(RoomClient client) {
+        String playerId = client.getPlayerId();
+        if (playerId != null) {
+            synchronized (players) {
+                int slot = players.slotOf(playerId);
+                if (slot != PlayerTable.NONE) players.unbind(slot, client);
+            }
+        }
+        if (clients.remove(client)) {
+            System.out.println("[ROOM] Удален клиент из обновлений. Всего клиентов: " + clients.size());
+        }
+    }
+
+    // Наблюдатель переходит из рассылки игрокам в общий поток снимков
+    public synchronized void addSpectator(RoomClient spectator) {
+        clients.remove(spectator);
+        spectators.add(spectator);
+        System.out.println("[ROOM] Подключен наблюдатель. Всего наблюдателей: " + spectators.size());
+
+        if (spectatorTimer == null) {
+            spectatorTimer = timers.scheduleAtFixedRate(this::broadcastSpectatorSnapshot,
+                    GameSettings.SPECTATOR_SNAPSHOT_INTERVAL, GameSettings.SPECTATOR_SNAPSHOT_INTERVAL,
+                    TimeUnit.MILLISECONDS);
+        }
+        // Первый снимок сразу, не дожидаясь тика
+        spectator.sendRawMessage(buildSpectatorSnapshot());
+    }
+
+    public synchronized void removeSpectator(RoomClient spectator) {
+        if (!spectators.remove(spectator)) return;
+        System.out.println("[ROOM] Отключен наблюдатель. Всего наблюдателей: " + spectators.size());
+
+        if (spectators.isEmpty() && spectatorTimer != null) {
+            spectatorTimer.cancel();
+            spectatorTimer = null;
+        }
+    }
+
+
+    public void setMaxPlayers(int maxPlayers) {
+        this.maxPlayers = maxPlayers;
+    }
+
+    public synchronized void setDraining(boolean draining) {
+        this.draining = draining;
+        if (draining && !gameStarted && matchStartTimer != null) {
+            matchStartTimer.cancel();
+            matchStartTimer = null;
+            System.out.println("[ROOM] Отсчет до матча остановлен: сервер завершает работу");
+        }
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    public int getPlayerCount() {
+        return players.size();
+    }
+
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    // Боты в лобби уступают место людям
+    public boolean isFull() {
+        return players.size() - (gameStarted ? 0 : bots.size()) >= maxPlayers;
+    }
+
+    public void setBotFill(int botFill) {
+        this.botFill = botFill;
+    }
+
+    // Integer.MAX_VALUE - всегда последовательно
+    public void setParallelJudgeThreshold(int parallelJudgeThreshold) {
+        this.parallelJudgeThreshold = parallelJudgeThreshold;
+    }
+
+    // Подсчет итогов последнего раунда (сравнение, выбывание, запись), нс
+    public long getLastResolveNanos() {
+        return lastResolveNanos;
+    }
+
+    // Уведомления выбывшим в последнем раунде, нс
+    public long getLastNotifyNanos() {
+        return lastNotifyNanos;
+    }
+
+    public boolean isBot(String playerId) {
+        return bots.isBot(playerId);
+    }
+
+    /**
+     * Добавляет ботов в лобби; матч начнется обычным отсчетом. Возвращает число добавленных.
+     */
+    public synchronized int addBots(int count) {
+        if (gameStarted) return 0;
+        int added = 0;
+        while (added < count && players.size() < maxPlayers) {
+            int slot = putPlayer(bots.nextName(), true);
+            bots.add(PlayerTable.idOf(slot), slot);
+            added++;
+        }
+        if (added > 0) {
+            System.out.println("[ROOM] Добавлено ботов: " + added + ". Всего игроков: " + players.size());
+            if (players.size() >= 2 && !draining && (matchStartTimer == null || matchStartTimer.isCancelled())) {
+                startMatchCountdown();
+            }
+            broadcastGameState();
+        }
+        return added;
+    }
+
+    // Число ботов в лобби: botFill минус люди, без людей - ни одного
+    private void balanceBots() {
+        if (gameStarted || resetting || botFill <= 0) return;
+        int humans = players.size() - bots.size();
+        int wanted = humans > 0 ? Math.max(0, Math.min(botFill, maxPlayers) - humans) : 0;
+
+        if (bots.size() < wanted) {
+            addBots(wanted - bots.size());
+        } else {
+            List<String> extra = bots.ids().subList(wanted, bots.size());
+            for (String botId : new ArrayList<>(extra)) {
+                removePlayer(botId);
+            }
+        }
     }
 
+    // Позиция бота меняется так же, как от MOVE клиента, но рассылку делает тик раунда
+    void moveBot(int slot, double x, double y) {
+        synchronized (players) {
+            applyMove(slot, x, y);
+        }
+    }
+
+    public void setReplayDirectory(Path replayDirectory) {
+        this.replayDirectory = replayDirectory;
+    }
 
-    public synchronized void addPlayer(Player player) {
+    /**
+     * Новый игрок в лобби: комната выдает ему id (номер слота) и закрепляет за ним соединение client.
+     * null - матч уже идет.
+     */
+    public synchronized Player addPlayer(String name, RoomClient client) {
         if (gameStarted) {
-            return;
+            return null;
+        }
+        // Место для человека освобождает бот
+        if (players.size() >= maxPlayers && bots.size() > 0) {
+            removePlayer(bots.ids().get(0));
+        }
+        Player player;
+        synchronized (players) {
+            int slot = putPlayer(name, false);
+            players.bind(slot, client);
+            player = players.snapshot(slot);
         }
-        players.put(player.getId(), player);
         System.out.println("[ROOM] Добавлен игрок: " + player.getName() + " (ID: " + player.getId() + ")");
         System.out.println("[ROOM] Всего игроков: " + players.size());
+        balanceBots();
 
         // Если набралось достаточно игроков и игра еще не начата
-        if (players.size() >= 2 && !gameStarted) {
+        if (players.size() >= 2 && !gameStarted && !draining) {
             startMatchCountdown();
         }
 
         // Отправляем обновление всем игрокам
         broadcastGameState();
+        return player;
+    }
+
+    // Появление в центре мира; возвращает слот игрока
+    private int putPlayer(String name, boolean bot) {
+        int slot;
+        synchronized (players) {
+            slot = players.add(name, field.getPixelWidth() / 2, field.getPixelHeight() / 2, true, bot);
+            playerIndex.add(slot, players.x(slot), players.y(slot));
+        }
+        return slot;
+    }
+
+    /**
+     * Выход игрока по запросу соединения; игнорируется, если за слотом закреплено другое соединение
+     * (слот ушедшего игрока мог достаться новому).
+     */
+    public synchronized void removePlayer(String playerId, RoomClient client) {
+        if (isBound(playerId, client)) {
+            removePlayer(playerId);
+        }
     }
 
     public synchronized void removePlayer(String playerId) {
-        // Сначала удаляем игрока из карты и получаем его
-        Player player = players.remove(playerId);
+        // Сначала удаляем игрока из таблицы и индекса и получаем его копию
+        Player player;
+        RoomClient client;
+        synchronized (players) {
+            int slot = players.slotOf(playerId);
+            client = slot != PlayerTable.NONE ? players.client(slot) : null;
+            player = players.remove(playerId);
+            if (player != null) {
+                playerIndex.remove(slot);
+            }
+        }
+        // Соединение забывает id: номер слота достанется следующему игроку
+        if (client != null) {
+            client.playerRemoved(playerId);
+        }
 
         // Проверяем, что игрок существует
         if (player == null) {
             System.out.println("[ROOM] Игрок с ID " + playerId + " не найден для удаления");
             return;
         }
+        closeSession(playerId);
+        if (gameStarted && recorder != null) {
+            recorder.recordLeave(playerId);
+        }
+        boolean bot = bots.remove(playerId);
 
         String name = player.getName();
-        int roundPlayer = Math.max(0, round - 1);
-        scoreboard.updateIfBetter(name, roundPlayer);
-
-        System.out.println("[ROOM] Удален игрок: " + name);
+        if (!bot) {
+            int roundPlayer = Math.max(0, round - 1);
+            scoreboard.updateIfBetter(name, roundPlayer);
+            System.out.println("[ROOM] Удален игрок: " + name);
+        }
 
-        // Если во время игры остался только один игрок
-        if (gameStarted && players.size() < 2) {
+        // Если во время игры остался только один игрок или ушел последний человек из матча с ботами
+        boolean onlyBotsLeft = !bot && bots.size() > 0 && players.size() == bots.size();
+        if (gameStarted && (players.size() < 2 || onlyBotsLeft)) {
             endGame(null);
+        } else if (!bot) {
+            balanceBots();
         }
 
         // Отправляем обновление всем игрокам
         broadcastGameState();
     }
 
+    /**
+     * Выдает токен сессии игроку, уже добавленному в комнату; null - игрока нет.
+     */
+    public synchronized String openSession(String playerId) {
+        if (!players.contains(playerId)) return null;
+
+        byte[] bytes = new byte[16];
+        tokenRandom.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, playerId);
+        sessionTokens.put(playerId, token);
+        return token;
+    }
+
+    // Соединение оборвалось: игрок остается в комнате до истечения срока ожидания.
+    // Игнорируется, если игрок уже перешел на другое соединение или слот занят другим игроком
+    public synchronized void detachPlayer(String playerId, RoomClient client) {
+        if (isBound(playerId, client)) {
+            detachPlayer(playerId);
+        }
+    }
+
+    private void detachPlayer(String playerId) {
+        if (!players.contains(playerId)) return;
+        if (!sessionTokens.containsKey(playerId)) {
+            removePlayer(playerId);
+            return;
+        }
+
+        Scheduler.Timeout expiry = timers.schedule(() -> expireSession(playerId),
+                GameSettings.RECONNECT_GRACE_PERIOD, TimeUnit.MILLISECONDS);
+        Scheduler.Timeout previous = detachedPlayers.put(playerId, expiry);
+        if (previous != null) {
+            previous.cancel();
+        }
+        System.out.println("[ROOM] Игрок " + players.get(playerId).getName() + " потерял соединение, ожидание " +
+                GameSettings.RECONNECT_GRACE_PERIOD / 1000 + " сек");
+    }
+
+    private synchronized void expireSession(String playerId) {
+        if (detachedPlayers.remove(playerId) == null) return;
+        System.out.println("[ROOM] Истекло ожидание переподключения: " + playerId);
+        removePlayer(playerId);
+    }
+
+    /**
+     * Возвращает игрока по токену сессии новому соединению; null - сессии нет или она истекла.
+     */
+    public synchronized Player resumePlayer(String token, RoomClient handler) {
+        String playerId = token != null ? sessions.get(token) : null;
+        RoomClient previous;
+        Player player;
+        synchronized (players) {
+            int slot = players.slotOf(playerId);
+            if (slot == PlayerTable.NONE) return null;
+            player = players.snapshot(slot);
+            previous = players.bind(slot, handler);
+        }
+
+        Scheduler.Timeout expiry = detachedPlayers.remove(playerId);
+        if (expiry != null) {
+            expiry.cancel();
+        }
+
+        // Старое соединение могло еще не закрыться (полуоткрытый сокет) - отключаем его, не трогая игрока
+        if (previous != null && previous != handler) {
+            previous.release();
+        }
+        System.out.println("[ROOM] Игрок " + player.getName() + " вернулся в игру");
+        return player;
+    }
+
+    private void closeSession(String playerId) {
+        String token = sessionTokens.remove(playerId);
+        if (token != null) {
+            sessions.remove(token);
+        }
+        Scheduler.Timeout expiry = detachedPlayers.remove(playerId);
+        if (expiry != null) {
+            expiry.cancel();
+        }
+    }
+
+    // Полный снимок одному клиенту: после переподключения история не пересылается
+    public void sendSnapshot(RoomClient client) {
+        synchronized (snapshotLock) {
+            fillGameState(stateMessage);
+            sendVisiblePlayers(client, stateMessage);
+        }
+    }
+
     private void startMatchCountdown() {
-        if (matchStartTimer != null && !matchStartTimer.isDone()) {
-            matchStartTimer.cancel(true);
+        if (matchStartTimer != null) {
+            matchStartTimer.cancel();
         }
 
         matchStartCountdown = calculateMatchStartDelay();
@@ -105,18 +488,24 @@ public class GameRoom {
         System.out.println("[ROOM] Запуск обратного отсчета до начала матча: " +
                 String.format("%.1f", matchStartCountdown) + " сек");
 
-        matchStartTimer = scheduler.scheduleAtFixedRate(() -> {
-            matchStartCountdown -= 0.1;
+        long now = timers.nanoTime();
+        matchStartDeadline = now + secondsToNanos(matchStartCountdown);
+        lastCountdownTick = now;
 
-            // Если игроков меньше 2, приостанавливаем отсчет
+        matchStartTimer = timers.scheduleAtFixedRate(() -> {
+            long tickTime = timers.nanoTime();
+
+            // Если игроков меньше 2, приостанавливаем отсчет: срок сдвигается на прошедшее время
             if (players.size() < 2) {
-                matchStartCountdown += 0.1;
+                matchStartDeadline += tickTime - lastCountdownTick;
             }
+            lastCountdownTick = tickTime;
+            matchStartCountdown = nanosToSeconds(matchStartDeadline - tickTime);
 
             // Если отсчет дошел до нуля и игроков достаточно - начинаем игру
             if (matchStartCountdown <= 0 && players.size() >= 2) {
+                if (matchStartTimer != null) matchStartTimer.cancel();
                 startGame();
-                if (matchStartTimer != null) matchStartTimer.cancel(true);
             } else {
                 broadcastGameState();
             }
@@ -137,24 +526,31 @@ public class GameRoom {
         return Math.max(delay, GameSettings.MIN_MATCH_START_DELAY);
     }
 
-    private void startGame() {
+    private synchronized void startGame() {
+        if (draining || gameStarted) return;
         isRoundActive = false;
-        currentTargetColor = "#FFFFF";
+        currentTargetColor = GameSettings.NO_COLOR;
         gameStarted = true;
         System.out.println("[ROOM] Игра началась! Всего игроков: " + players.size());
+        startRecording();
         startNewRound(true);
     }
 
     private void startNewRound(boolean isStart) {
         round++;
-        currentTargetColor = GameSettings.ROUND_COLORS[random.nextInt(GameSettings.ROUND_COLORS.length)];
+        currentTargetColor = (byte) random.nextInt(GameSettings.ROUND_COLORS.length);
         roundDuration = calculateRoundDuration();
         roundTimeLeft = roundDuration;
+        roundDeadline = timers.nanoTime() + secondsToNanos(roundDuration);
         isRoundActive = true;
         generateField();
+        bots.startRound(field, currentTargetColor, timers.nanoTime());
+        if (recorder != null) {
+            recorder.recordRoundStart(round, currentTargetColor, field.getSeed(), roundDuration);
+        }
 
 
-        System.out.println("[ROOM] Раунд " + round + " начался. Цвет: " + currentTargetColor +
+        System.out.println("[ROOM] Раунд " + round + " начался. Цвет: " + GameSettings.ROUND_COLORS[currentTargetColor] +
                 ". Время: " + String.format("%.1f", roundDuration) + " сек" +
                 ". Время: " + String.format("%.1f", matchStartCountdown) + " сек"
         );
@@ -166,23 +562,36 @@ public class GameRoom {
             broadcastRoundStart();
         }
 
-        // Запуск таймера раунда
-        if (roundTimer != null && !roundTimer.isDone()) {
-            roundTimer.cancel(true);
+        startRoundTimer();
+    }
+
+    // Тик раунда: оставшееся время считается от roundDeadline
+    private void startRoundTimer() {
+        if (roundTimer != null) {
+            roundTimer.cancel();
         }
 
-        roundTimer = scheduler.scheduleAtFixedRate(() -> {
-            roundTimeLeft -= 0.1;
+        roundTimer = timers.scheduleAtFixedRate(() -> {
+            roundTimeLeft = nanosToSeconds(roundDeadline - timers.nanoTime());
 
             if (roundTimeLeft <= 0 || players.size() < 2) {
+                if (roundTimer != null) roundTimer.cancel();
                 endRound();
-                if (roundTimer != null) roundTimer.cancel(true);
             } else {
+                bots.tick(timers.nanoTime());
                 broadcastGameState();
             }
         }, 0, 100, TimeUnit.MILLISECONDS);
     }
 
+    private static long secondsToNanos(double seconds) {
+        return (long) (seconds * 1_000_000_000L);
+    }
+
+    private static double nanosToSeconds(long nanos) {
+        return Math.max(0, nanos / 1_000_000_000.0);
+    }
+
     private double calculateRoundDuration() {
         double duration = GameSettings.INITIAL_ROUND_TIME - ((round - 1) * GameSettings.ROUND_TIME_DECREMENT);
         return Math.max(duration, GameSettings.MIN_ROUND_TIME);
@@ -190,77 +599,139 @@ public class GameRoom {
 
     private void endRound() {
         isRoundActive = false;
+        long started = System.nanoTime();
         System.out.println("[ROOM] Раунд " + round + " завершен");
 
-        List<Player> survivors = new ArrayList<>();
-        List<String> eliminatedPlayers = new ArrayList<>();
-
-        for (Player player : players.values()) {
-            if (player.isAlive()) {
-                String spotColor = getSpotColorAt(player.getX(), player.getY());
-                if (spotColor.equals(currentTargetColor)) {
-                    survivors.add(player);
-                    System.out.println("[ROOM] Игрок выжил: " + player.getName());
+        // Соединения выбывших - из таблицы по слоту, без поиска по списку клиентов
+        eliminatedClients.clear();
+        int survivors = 0;
+
+        // Для записи: позиции, по которым судился раунд
+        int checked = 0;
+
+        // Движения ждут на блокировке таблицы, поэтому позиция, по которой судится игрок,
+        // и его выбывание согласованы - так же, как в handlePlayerMove.
+        // Сначала сравнение цветов (в больших комнатах - параллельно), затем один проход с выбыванием
+        synchronized (players) {
+            int limit = players.limit();
+            ensureRoundBuffers(limit);
+            players.judge(currentTargetColor, eliminatedSlots, limit >= parallelJudgeThreshold);
+
+            boolean[] alive = players.aliveArray();
+            boolean[] isBot = players.botArray();
+            byte[] colors = players.colorArray();
+            double[] xs = players.xArray();
+            double[] ys = players.yArray();
+
+            for (int i = 0; i < limit; i++) {
+                if (!alive[i]) continue;
+
+                boolean eliminated = eliminatedSlots[i];
+                if (eliminated) {
+                    players.eliminate(i);
+                    RoomClient client = players.client(i);
+                    if (client != null) eliminatedClients.add(client);
                 } else {
-                    player.setAlive(false);
-                    eliminatedPlayers.add(player.getId());
-                    System.out.println("[ROOM] Игрок выбыл: " + player.getName() +
-                            " (стоял на " + spotColor + ", нужен " + currentTargetColor + ")");
+                    survivors++;
+                }
+
+                // Ботов в журнале не перечисляем: в больших комнатах их тысячи
+                if (!isBot[i]) {
+                    if (eliminated) {
+                        System.out.println("[ROOM] Игрок выбыл: " + players.name(i) +
+                                " (стоял на " + GameSettings.ROUND_COLORS[colors[i]] +
+                                ", нужен " + GameSettings.ROUND_COLORS[currentTargetColor] + ")");
+                    } else {
+                        System.out.println("[ROOM] Игрок выжил: " + players.name(i));
+                    }
                 }
+
+                checkedIds[checked] = players.id(i);
+                checkedX[checked] = xs[i];
+                checkedY[checked] = ys[i];
+                checkedEliminated[checked] = eliminated;
+                checked++;
+            }
+
+            // Под той же блокировкой, что и recordMove: движение после подсчета ляжет в журнал после итогов
+            MatchRecorder matchRecorder = recorder;
+            if (matchRecorder != null) {
+                matchRecorder.recordRoundEnd(round, checkedIds, checkedX, checkedY, checkedEliminated, checked);
             }
         }
+        long resolved = System.nanoTime();
+        lastResolveNanos = resolved - started;
 
         broadcastGameState();
 
         // Отправляем персональные сообщения eliminated игрокам
-        for (String playerId : eliminatedPlayers) {
-            sendPlayerEliminated(playerId);
-        }
+        long notifyStarted = System.nanoTime();
+        sendPlayerEliminated(eliminatedClients);
+        lastNotifyNanos = System.nanoTime() - notifyStarted;
+
+        System.out.println("[ROOM] Итоги раунда " + round + ": выжило " + survivors + " из " + checked +
+                String.format(", подсчет %.2f мс, уведомления выбывшим (%d) %.2f мс",
+                        lastResolveNanos / 1_000_000.0, eliminatedClients.size(), lastNotifyNanos / 1_000_000.0));
+        eliminatedClients.clear();
 
         // Задержка перед следующим раундом или завершением
-        scheduler.schedule(() -> {
-            if (survivors.size() <= 1) {
-                Player winner = survivors.isEmpty() ? null : survivors.get(0);
-                endGame(winner);
-            } else {
-                startNewRound(false);
-            }
-        }, 2000, TimeUnit.MILLISECONDS);
+        scheduleRoundBreakEnd(ROUND_BREAK);
     }
 
-    private void sendPlayerEliminated(String playerId) {
-        ClientHandler handler = getClientHandlerByPlayerId(playerId);
-        if (handler != null) {
-            Message msg = new Message(MessageTypes.PLAYER_ELIMINATED);
-            msg.setWinner("Вы проиграли!");
+    // Слотов в таблице не больше limit, живых среди них - тоже
+    private void ensureRoundBuffers(int limit) {
+        if (limit <= eliminatedSlots.length) return;
+        int capacity = Math.max(limit, eliminatedSlots.length * 2);
+        eliminatedSlots = new boolean[capacity];
+        checkedIds = new String[capacity];
+        checkedX = new double[capacity];
+        checkedY = new double[capacity];
+        checkedEliminated = new boolean[capacity];
+    }
 
-            // Добавляем текущий scoreboard для выбывшего игрока
-            List<ScoreboardEntry> topScores = scoreboard.getTop(10);
-            msg.setScores(topScores);
+    // Конец перерыва между раундами: выжившие считаются в момент срабатывания,
+    // чтобы учесть вышедших за время перерыва
+    private void scheduleRoundBreakEnd(long delayMillis) {
+        roundBreakTimer = timers.schedule(() -> {
+            synchronized (this) {
+                if (!gameStarted) return;
 
-            handler.sendMessage(msg);
-        }
+                if (players.aliveCount() <= 1) {
+                    endGame(players.firstAlive());
+                } else {
+                    startNewRound(false);
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
     }
 
-    // Вспомогательный метод для получения ClientHandler по playerId
-    private ClientHandler getClientHandlerByPlayerId(String playerId) {
-        for (ClientHandler handler : clients) {
-            if (playerId.equals(handler.getPlayerId())) {
-                return handler;
-            }
-        }
-        return null;
+    // Сообщение у всех выбывших одно: таблица рекордов запрашивается и JSON строится один раз,
+    // затем строка уходит в очереди отправки соединений одним проходом
+    private void sendPlayerEliminated(List<RoomClient> handlers) {
+        if (handlers.isEmpty()) return;
+
+        Message msg = new Message(MessageTypes.PLAYER_ELIMINATED);
+        msg.setWinner("Вы проиграли!");
+
+        // Добавляем текущий scoreboard для выбывших игроков
+        List<ScoreboardEntry> topScores = scoreboard.getTop(10);
+        msg.setScores(topScores);
+
+        sendToAll(handlers, msg.toJson());
     }
 
     private void endGame(Player winner) {
         if (winner != null) {
             System.out.println("[ROOM] Игра завершена. Победитель: " + winner.getName());
 
-            // score = количество раундов
-            scoreboard.updateIfBetter(winner.getName(), round);
+            // score = количество раундов; боты в таблицу рекордов не попадают
+            if (!bots.isBot(winner.getId())) {
+                scoreboard.updateIfBetter(winner.getName(), round);
+            }
         } else {
             System.out.println("[ROOM] Игра завершена. Ничья.");
         }
+        stopRecording(winner);
 
         broadcastGameOver(winner);
         resetParamsGame();
@@ -269,27 +740,35 @@ public class GameRoom {
 
     public void resetParamsGame() {
         // Отменяем все таймеры
-        if (roundTimer != null && !roundTimer.isDone()) {
-            roundTimer.cancel(true);
+        if (roundTimer != null) {
+            roundTimer.cancel();
+        }
+        if (matchStartTimer != null) {
+            matchStartTimer.cancel();
         }
-        if (matchStartTimer != null && !matchStartTimer.isDone()) {
-            matchStartTimer.cancel(true);
+        if (roundBreakTimer != null) {
+            roundBreakTimer.cancel();
         }
 
         // Сбрасываем параметры игры
         gameStarted = false;
         isRoundActive = false;
-        currentTargetColor = "#FFFFFF";
+        currentTargetColor = GameSettings.NO_COLOR;
         round = 0;
         roundDuration = GameSettings.INITIAL_ROUND_TIME;
         matchStartCountdown = GameSettings.BASE_MATCH_START_DELAY; // Начальное значение из настроек
 
         System.out.println("[ROOM] Сброс комнаты");
 
-        // Создаем копию ключей для безопасного удаления
-        List<String> playerIds = new ArrayList<>(players.keySet());
-        for (String playerId : playerIds) {
-            removePlayer(playerId);
+        // Копия id для безопасного удаления
+        List<String> playerIds = players.ids();
+        resetting = true;
+        try {
+            for (String playerId : playerIds) {
+                removePlayer(playerId);
+            }
+        } finally {
+            resetting = false;
         }
 
         // Генерируем новое поле для следующей игры
@@ -299,35 +778,123 @@ public class GameRoom {
         broadcastGameState();
     }
 
-    private String getSpotColorAt(double x, double y) {
-        int gx = (int) (x / GameSettings.CELL_SIZE);
-        int gy = (int) (y / GameSettings.CELL_SIZE);
+    // Запись начинается со списка игроков и их стартовых позиций
+    private void startRecording() {
+        if (replayDirectory == null) return;
+        try {
+            MatchRecorder matchRecorder = MatchRecorder.start(replayDirectory, gridWidth, gridHeight, timers::nanoTime);
+            synchronized (players) {
+                for (int i = 0; i < players.limit(); i++) {
+                    if (!players.isUsed(i)) continue;
+                    matchRecorder.recordJoin(players.id(i), players.name(i), players.x(i), players.y(i));
+                }
+            }
+            recorder = matchRecorder;
+        } catch (IOException e) {
+            System.err.println("[ROOM][ERROR] Не удалось начать запись матча: " + e.getMessage());
+        }
+    }
+
+    private void stopRecording(Player winner) {
+        MatchRecorder matchRecorder = recorder;
+        if (matchRecorder == null) return;
+        recorder = null;
+        matchRecorder.recordGameOver(winner != null ? winner.getId() : null, round);
+    }
 
-        gx = Math.max(0, Math.min(gx, GameSettings.GRID_W - 1));
-        gy = Math.max(0, Math.min(gy, GameSettings.GRID_H - 1));
 
-        int index = field[gy * GameSettings.GRID_W + gx];
-        return GameSettings.ROUND_COLORS[index];
+    public void handlePlayerMove(String playerId, RoomClient client, double x, double y) {
+        // Поиск слота и движение под одной блокировкой: слот ушедшего игрока мог достаться другому,
+        // и двигать его может только закрепленное за слотом соединение
+        synchronized (players) {
+            int slot = players.slotOf(playerId);
+            if (slot == PlayerTable.NONE || players.client(slot) != client || !applyMove(slot, x, y)) return;
+        }
+        requestStateBroadcast();
     }
 
+    // Вызывается под блокировкой таблицы игроков
+    private boolean applyMove(int slot, double x, double y) {
+        if (!players.isAlive(slot)) return false;
 
-    public void handlePlayerMove(String playerId, double x, double y) {
-        Player player = players.get(playerId);
-        if (player != null && player.isAlive()) {
-            // Ограничение движения в пределах поля
-            double boundedX = Math.max(10, Math.min(x, GameSettings.WORLD_WIDTH - 10));
-            double boundedY = Math.max(10, Math.min(y, GameSettings.WORLD_HEIGHT - 10));
-            player.setX(boundedX);
-            player.setY(boundedY);
-            broadcastGameState();
+        // Ограничение движения в пределах поля
+        double boundedX = Math.max(10, Math.min(x, field.getPixelWidth() - 10));
+        double boundedY = Math.max(10, Math.min(y, field.getPixelHeight() - 10));
+        players.move(slot, boundedX, boundedY);
+
+        MatchRecorder matchRecorder = recorder;
+        if (matchRecorder != null) {
+            matchRecorder.recordMove(players.id(slot), boundedX, boundedY);
         }
+        playerIndex.update(slot, boundedX, boundedY);
+        return true;
     }
 
-    // Рассылка обновлений всем клиентам
+    // Рассылка после движения: сколько бы MOVE ни пришло, снимок уходит не чаще раза в интервал,
+    // и строится в потоке таймера, а не в потоке чтения клиента
+    private void requestStateBroadcast() {
+        if (!stateBroadcastPending.compareAndSet(false, true)) return;
+
+        long delay = lastStateBroadcast + TimeUnit.MILLISECONDS.toNanos(STATE_BROADCAST_INTERVAL) - timers.nanoTime();
+        timers.schedule(pendingStateBroadcast, Math.max(0, delay), TimeUnit.NANOSECONDS);
+    }
+
+    // Рассылка обновлений всем клиентам и наблюдателям; сообщение сериализуется один раз
     private void broadcastMessage(Message message) {
-        for (ClientHandler client : new ArrayList<>(clients)) {
+        String json = message.toJson();
+        sendToAll(clients, json);
+        sendToAll(spectators, json);
+    }
+
+    private void sendToAll(List<RoomClient> receivers, String json) {
+        for (RoomClient client : receivers) {
+            try {
+                client.sendRawMessage(json);
+            } catch (Exception e) {
+                System.err.println("[ROOM][ERROR] Ошибка отправки сообщения клиенту: " + e.getMessage());
+                receivers.remove(client);
+            }
+        }
+    }
+
+    // Снимок для наблюдателей строится и сериализуется один раз на всех
+    private void broadcastSpectatorSnapshot() {
+        if (spectators.isEmpty()) return;
+        sendToAll(spectators, buildSpectatorSnapshot());
+    }
+
+    // Общий снимок всей комнаты, сразу сериализованный
+    private String buildSpectatorSnapshot() {
+        synchronized (snapshotLock) {
+            fillGameState(spectatorMessage);
+            snapshotPlayers.clear();
+            synchronized (players) {
+                for (int i = 0; i < players.limit(); i++) {
+                    if (players.isUsed(i)) addSnapshotPlayer(i);
+                }
+            }
+            spectatorMessage.setPlayers(snapshotView);
+            try {
+                return spectatorMessage.toJson();
+            } finally {
+                snapshotPlayers.clear();
+            }
+        }
+    }
+
+    // Поле целиком описывается размером и seed - клиент генерирует его сам
+    private void setFieldInfo(Message message) {
+        message.setGridWidth(gridWidth);
+        message.setGridHeight(gridHeight);
+        message.setFieldSeed(field.getSeed());
+    }
+
+    // Рассылка, в которой каждый клиент получает игроков из своей области интереса.
+    // CopyOnWriteArrayList итерируется по своему снимку - копия списка клиентов не нужна
+    private void broadcastWithVisiblePlayers(Message message) {
+        for (RoomClient client : clients) {
             try {
-                client.sendMessage(message);
+                sendVisiblePlayers(client, message);
             } catch (Exception e) {
                 System.err.println("[ROOM][ERROR] Ошибка отправки сообщения клиенту: " + e.getMessage());
                 clients.remove(client);
@@ -335,8 +902,55 @@ public class GameRoom {
         }
     }
 
+    // Игроки в области интереса (экран клиента с запасом) - копии, снятые под блокировкой таблицы
+    // в общий буфер; вызывается под snapshotLock
+    private void sendVisiblePlayers(RoomClient client, Message message) {
+        String playerId = client.getPlayerId();
+        snapshotPlayers.clear();
+        synchronized (players) {
+            int viewer = playerId != null ? players.slotOf(playerId) : PlayerTable.NONE;
+            if (viewer != PlayerTable.NONE && players.client(viewer) != client) {
+                viewer = PlayerTable.NONE;
+            }
+            double x = viewer != PlayerTable.NONE ? players.x(viewer) : field.getPixelWidth() / 2;
+            double y = viewer != PlayerTable.NONE ? players.y(viewer) : field.getPixelHeight() / 2;
+
+            int count = playerIndex.query(x, y,
+                    GameSettings.WORLD_WIDTH / 2.0 + GameSettings.INTEREST_MARGIN,
+                    GameSettings.WORLD_HEIGHT / 2.0 + GameSettings.INTEREST_MARGIN,
+                    players.xArray(), players.yArray());
+            int[] visible = playerIndex.result();
+            for (int i = 0; i < count; i++) {
+                addSnapshotPlayer(visible[i]);
+            }
+        }
+        message.setPlayers(snapshotView);
+        try {
+            client.sendMessage(message);
+        } finally {
+            snapshotPlayers.clear();
+        }
+    }
+
+    // Копия игрока из слота в следующий объект пула; под snapshotLock и блокировкой таблицы
+    private void addSnapshotPlayer(int slot) {
+        int index = snapshotPlayers.size();
+        if (index == snapshotPool.size()) {
+            snapshotPool.add(new Player());
+        }
+        snapshotPlayers.add(players.copy(slot, snapshotPool.get(index)));
+    }
+
     private void broadcastGameState() {
-        Message msg = new Message(MessageTypes.GAME_STATE);
+        lastStateBroadcast = timers.nanoTime();
+        synchronized (snapshotLock) {
+            fillGameState(stateMessage);
+            broadcastWithVisiblePlayers(stateMessage);
+        }
+    }
+
+    // Общая часть снимка: состояние раунда, счетчики по всей комнате и поле
+    private void fillGameState(Message msg) {
         msg.setRound(round);
         msg.setTargetColor(currentTargetColor);
         msg.setTimeLeft(roundTimeLeft);
@@ -344,34 +958,27 @@ public class GameRoom {
         msg.setGameStarted(gameStarted);
         msg.setIsRoundActive(isRoundActive);
         msg.setMatchStartCountdown(matchStartCountdown);
-        msg.setField(field);
 
-        // Передаем клонов для потокобезопасности
-        List<Player> playerList = new ArrayList<>();
-        for (Player player : players.values()) {
-            playerList.add(player.clone());
-        }
-        msg.setPlayers(playerList);
-
-
-        broadcastMessage(msg);
+        // Счетчики по всей комнате; сами игроки - только из области интереса клиента
+        msg.setTotalPlayers(players.size());
+        msg.setAlivePlayers(players.aliveCount());
+        setFieldInfo(msg);
     }
 
     private void broadcastRoundStart() {
         Message msg = new Message(MessageTypes.ROUND_START);
         msg.setTargetColor(currentTargetColor);
         msg.setDuration(roundDuration);
-        msg.setField(field);
+        setFieldInfo(msg);
         broadcastMessage(msg);
     }
 
     private void broadcastGameStart() {
-        generateField();
         Message msg = new Message(MessageTypes.MATCH_START);
         System.out.println("[ROOM] MATCH__START");
         msg.setTargetColor(currentTargetColor);
         msg.setDuration(roundDuration);
-        msg.setField(field);
+        setFieldInfo(msg);
         broadcastMessage(msg);
     }
 
@@ -390,89 +997,120 @@ public class GameRoom {
     }
 
 
-    private void generateField() {
-        int w = GameSettings.GRID_W;
-        int h = GameSettings.GRID_H;
-        field = new byte[w * h];
-
-        // Инициализируем поле базовым цветом (например, первым цветом)
-        byte baseColor = 0;
-        for (int i = 0; i < w * h; i++) {
-            field[i] = baseColor;
-        }
-
-        Random r = new Random();
-        int numColors = GameSettings.ROUND_COLORS.length;
-
-        // 1. Гарантированное размещение каждого цвета
-        for (byte colorIndex = 0; colorIndex < numColors; colorIndex++) {
-            // Размещаем минимум 3 пятна для каждого цвета
-            for (int blob = 0; blob < 3; blob++) {
-                int cx = r.nextInt(w);
-                int cy = r.nextInt(h);
-                int radius = 2 + r.nextInt(3); // Небольшие пятна для гарантированного размещения
-
-                for (int y = -radius; y <= radius; y++) {
-                    for (int x = -radius; x <= radius; x++) {
-                        int nx = cx + x;
-                        int ny = cy + y;
-
-                        if (nx < 0 || ny < 0 || nx >= w || ny >= h) continue;
-
-                        double dist = Math.sqrt(x * x + y * y);
-                        if (dist <= radius) {
-                            field[ny * w + nx] = colorIndex;
-                        }
-                    }
-                }
+    /**
+     * Записывает состояние идущего матча для восстановления после падения.
+     * false - матч не идет, сохранять нечего.
+     */
+    public synchronized boolean writeCheckpoint(ByteBuffer out) {
+        if (!gameStarted || players.size() == bots.size()) return false;
+
+        out.putInt(gridWidth);
+        out.putInt(gridHeight);
+        out.putLong(field.getSeed());
+        out.putInt(round);
+        out.put(currentTargetColor);
+        out.putDouble(roundDuration);
+        out.put((byte) (isRoundActive ? 1 : 0));
+        out.putLong(isRoundActive ? Math.max(0, roundDeadline - timers.nanoTime()) : 0);
+
+        // Боты в снимок не попадают: после восстановления их некому вернуть.
+        // id не пишется: восстановленные игроки получают новые слоты, а с ними и новые id
+        synchronized (players) {
+            out.putInt(players.size() - players.botCount());
+            for (int i = 0; i < players.limit(); i++) {
+                if (!players.isUsed(i) || players.isBot(i)) continue;
+                RoomCheckpointStore.putString(out, players.name(i));
+                RoomCheckpointStore.putString(out, sessionTokens.get(players.id(i)));
+                out.putDouble(players.x(i));
+                out.putDouble(players.y(i));
+                out.put((byte) (players.isAlive(i) ? 1 : 0));
             }
         }
+        return true;
+    }
 
-        // 2. Добавляем случайные крупные пятна для разнообразия
-        int blobs = 8 + r.nextInt(12);
-        for (int i = 0; i < blobs; i++) {
-            int cx = r.nextInt(w);
-            int cy = r.nextInt(h);
-            int radius = 4 + r.nextInt(8); // Крупные пятна
-            byte colorIndex = (byte) r.nextInt(numColors);
-
-            for (int y = -radius; y <= radius; y++) {
-                for (int x = -radius; x <= radius; x++) {
-                    int nx = cx + x;
-                    int ny = cy + y;
-
-                    if (nx < 0 || ny < 0 || nx >= w || ny >= h) continue;
+    /**
+     * Восстанавливает матч из снимка: игроки ждут переподключения по своим токенам,
+     * раунд продолжается с оставшимся временем. Время простоя сервера не засчитывается.
+     */
+    public synchronized boolean restoreCheckpoint(ByteBuffer in) {
+        if (gameStarted || players.size() > 0) return false;
+
+        int width = in.getInt();
+        int height = in.getInt();
+        if (width != gridWidth || height != gridHeight) {
+            System.err.println("[ROOM][ERROR] Снимок для поля " + width + "x" + height + ", пропущен");
+            return false;
+        }
+        long seed = in.getLong();
+        int savedRound = in.getInt();
+        byte targetColor = in.get();
+        double duration = in.getDouble();
+        boolean roundActive = in.get() != 0;
+        long remaining = in.getLong();
+
+        int count = in.getInt();
+        List<Player> restored = new ArrayList<>(count);
+        List<String> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Player player = new Player(null, RoomCheckpointStore.getString(in));
+            tokens.add(RoomCheckpointStore.getString(in));
+            player.setX(in.getDouble());
+            player.setY(in.getDouble());
+            player.setAlive(in.get() != 0);
+            restored.add(player);
+        }
 
-                    double dist = Math.sqrt(x * x + y * y);
-                    if (dist <= radius * 0.8) { // Используем эллипс для более естественных форм
-                        field[ny * w + nx] = colorIndex;
-                    }
-                }
+        gameStarted = true;
+        round = savedRound;
+        currentTargetColor = targetColor;
+        roundDuration = duration;
+        isRoundActive = roundActive;
+        field.generate(seed);
+
+        // Новый id игрок узнает из ответа RESUME
+        List<String> restoredIds = new ArrayList<>(count);
+        for (int i = 0; i < restored.size(); i++) {
+            Player player = restored.get(i);
+            String playerId;
+            synchronized (players) {
+                int slot = players.add(player.getName(), player.getX(), player.getY(), player.isAlive(), false);
+                playerIndex.add(slot, players.x(slot), players.y(slot));
+                playerId = players.id(slot);
+            }
+            restoredIds.add(playerId);
+            if (!tokens.get(i).isEmpty()) {
+                sessions.put(tokens.get(i), playerId);
+                sessionTokens.put(playerId, tokens.get(i));
             }
         }
-
-        // 3. Проверка и гарантия наличия всех цветов
-        boolean[] colorsPresent = new boolean[numColors];
-        for (int i = 0; i < w * h; i++) {
-            colorsPresent[field[i]] = true;
+        System.out.println("[ROOM] Восстановлен матч из снимка: раунд " + round + ", игроков " + players.size());
+
+        startRecording();
+        if (isRoundActive) {
+            roundDeadline = timers.nanoTime() + remaining;
+            roundTimeLeft = nanosToSeconds(remaining);
+            if (recorder != null) {
+                recorder.recordRoundStart(round, currentTargetColor, field.getSeed(), roundTimeLeft);
+            }
+            startRoundTimer();
+        } else {
+            scheduleRoundBreakEnd(ROUND_BREAK);
         }
 
-        // Если какой-то цвет отсутствует - добавляем его принудительно
-        for (byte colorIndex = 0; colorIndex < numColors; colorIndex++) {
-            if (!colorsPresent[colorIndex]) {
-                int cx = r.nextInt(w);
-                int cy = r.nextInt(h);
-                field[cy * w + cx] = colorIndex;
-            }
+        // Все игроки считаются отключившимися, пока не вернутся по токену
+        for (String playerId : restoredIds) {
+            detachPlayer(playerId);
         }
+        return true;
+    }
 
-        // 4. Добавляем шум для естественности
-        int noisePoints = w * h / 20; // 5% ячеек
-        for (int i = 0; i < noisePoints; i++) {
-            int x = r.nextInt(w);
-            int y = r.nextInt(h);
-            byte randomColor = (byte) r.nextInt(numColors);
-            field[y * w + x] = randomColor;
+    // Новое поле - это новый seed; клетки строятся лениво при обращении.
+    // Цвета под игроками пересчитываются вместе со сменой поля, чтобы движения не записали старый цвет
+    private void generateField() {
+        synchronized (players) {
+            field.generate(random.nextLong());
+            players.refreshColors();
         }
     }
 
@@ -1,50 +1,282 @@
 package server;
 
+import common.GameSettings;
+import common.Message;
+import common.MessageTypes;
+import common.ProcessClock;
 import server.db.ScoreboardRepository;
+import server.directory.DirectoryClient;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class GameServer {
-    private static final int PORT = 5556;
+    private static final int PORT = Integer.getInteger("colorrush.port", 5556);
+
+    // Плавная остановка командой drain: сколько ждать окончания текущего матча
+    private static final long DRAIN_TIMEOUT = Long.getLong("colorrush.drainTimeoutSeconds", 300);
+    // SIGTERM / Ctrl+C: менеджер процессов ждет недолго, матч доигрывается не дольше этого
+    private static final long SHUTDOWN_DRAIN_TIMEOUT = Long.getLong("colorrush.shutdownDrainSeconds", 5);
+    private static final long CLIENT_STOP_TIMEOUT = 5;
+    private static final long SCORE_FLUSH_TIMEOUT = 10;
+    // Период снимков комнаты для восстановления после падения, мс
+    private static final long CHECKPOINT_INTERVAL = 1000;
+
+    // Очередь ожидающих accept соединений и общий предел соединений сервера
+    private static final int ACCEPT_BACKLOG = Integer.getInteger("colorrush.acceptBacklog", 128);
+    private static final int MAX_CONNECTIONS = Integer.getInteger("colorrush.maxConnections", 1000);
+    private static final int MAX_PLAYERS = Integer.getInteger("colorrush.maxPlayers", 500);
+    // UDP-канал для снимков и движений на том же номере порта: -Dcolorrush.udp=false выключает
+    private static final boolean UDP = Boolean.parseBoolean(System.getProperty("colorrush.udp", "true"));
+
     private ServerSocket serverSocket;
+    private volatile DatagramTransport datagrams;
     private final ExecutorService clientThreads = Executors.newCachedThreadPool();
+    private final Set<ClientHandler> handlers = ConcurrentHashMap.newKeySet();
     private final GameRoom gameRoom;
     private final ScoreboardRepository scoreboard;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private RoomCheckpointStore checkpoints;
+    private DirectoryClient directory;
+    private volatile boolean draining = false;
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+    // Один таймер на весь сервер: сроки всех комнат, фиксированное число потоков
+    private final TimerWheel timers = new TimerWheel(10, TimeUnit.MILLISECONDS, 512,
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
 
     public GameServer() {
         this.scoreboard = new ScoreboardRepository();
-        this.gameRoom = new GameRoom(scoreboard);
+        // Режим большого мира: -Dcolorrush.gridWidth=2000 -Dcolorrush.gridHeight=2000 (в клетках)
+        int gridWidth = Integer.getInteger("colorrush.gridWidth", GameSettings.GRID_W);
+        int gridHeight = Integer.getInteger("colorrush.gridHeight", GameSettings.GRID_H);
+        this.gameRoom = new GameRoom(scoreboard, timers, gridWidth, gridHeight);
+        gameRoom.setMaxPlayers(MAX_PLAYERS);
+        // Боты дополняют лобби до заданного числа игроков: -Dcolorrush.botFill=4 (0 - без ботов)
+        gameRoom.setBotFill(Integer.getInteger("colorrush.botFill", 0));
+        metrics.start(timers);
+
+        // Запись матчей: -Dcolorrush.replayDir=<каталог>, пустое значение выключает запись
+        String replayDir = System.getProperty("colorrush.replayDir", "replays");
+        if (!replayDir.isBlank()) {
+            gameRoom.setReplayDirectory(Paths.get(replayDir));
+            System.out.println("[SERVER] Запись матчей в каталог: " + replayDir);
+        }
+        System.out.println("[SERVER] Размер поля: " + gridWidth + "x" + gridHeight + " клеток");
+
+        // Снимки комнаты: -Dcolorrush.checkpointDir=<каталог>, пустое значение выключает.
+        // Матч, прерванный падением сервера, продолжается, игроки возвращаются по токенам сессий
+        String checkpointDir = System.getProperty("colorrush.checkpointDir", "checkpoints");
+        if (!checkpointDir.isBlank()) {
+            try {
+                checkpoints = new RoomCheckpointStore(Paths.get(checkpointDir), "room-" + PORT);
+                checkpoints.restore(gameRoom);
+                checkpoints.start(timers, gameRoom, CHECKPOINT_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (IOException e) {
+                System.err.println("[SERVER] Снимки комнаты отключены: " + e.getMessage());
+            }
+        }
+
+        // Работа за каталогом серверов: -Dcolorrush.directory=host:port,
+        // адрес для клиентов - -Dcolorrush.publicHost (по умолчанию localhost)
+        String directoryAddress = System.getProperty("colorrush.directory", "");
+        if (!directoryAddress.isBlank()) {
+            directory = new DirectoryClient(directoryAddress, this::buildNodeStatus);
+            directory.start();
+        }
+    }
+
+    private Message buildNodeStatus() {
+        Message status = new Message(MessageTypes.NODE_STATUS);
+        status.setHost(System.getProperty("colorrush.publicHost", "localhost"));
+        status.setPort(PORT);
+        status.setTotalPlayers(gameRoom.getPlayerCount());
+        status.setCapacity(gameRoom.getMaxPlayers());
+        status.setConnections(metrics.getActiveConnections());
+        status.setGameStarted(gameRoom.isGameStarted());
+        status.setDraining(draining);
+        return status;
     }
 
     public void start() {
         try {
-            serverSocket = new ServerSocket(PORT);
+            serverSocket = openServerSocket();
+            datagrams = openDatagrams();
 
             while (!Thread.currentThread().isInterrupted()) {
                 Socket clientSocket = serverSocket.accept();
 
-                ClientHandler handler = new ClientHandler(clientSocket, gameRoom);
-                clientThreads.submit(handler);
+                // Сверх предела соединение отклоняется сразу, без потока обработки
+                if (metrics.connectionOpened() > MAX_CONNECTIONS) {
+                    metrics.connectionClosed();
+                    rejectConnection(clientSocket);
+                    continue;
+                }
+
+                ClientHandler handler = new ClientHandler(clientSocket, gameRoom, metrics, datagrams);
+                handlers.add(handler);
+                try {
+                    clientThreads.submit(() -> {
+                        try {
+                            handler.run();
+                        } finally {
+                            handlers.remove(handler);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // Сервер останавливается
+                    handlers.remove(handler);
+                    metrics.connectionClosed();
+                    clientSocket.close();
+                }
             }
         } catch (IOException e) {
-            if (!Thread.currentThread().isInterrupted()) {
+            if (!draining && !Thread.currentThread().isInterrupted()) {
                 System.err.println("Ошибка сервера: " + e.getMessage());
             }
         } finally {
-            stop();
+            // При плавной остановке сервер останавливает drain(), когда доиграет матч
+            if (!draining) {
+                stop();
+            }
+        }
+    }
+
+    // SO_REUSEPORT позволяет новому процессу занять порт, пока старый доигрывает матчи:
+    // новые соединения уходят к новому процессу, старый закрывает свой сокет при drain()
+    private ServerSocket openServerSocket() throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        if (socket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        } else {
+            System.out.println("[SERVER] SO_REUSEPORT не поддерживается, передача порта без простоя недоступна");
+        }
+        socket.bind(new InetSocketAddress(PORT), ACCEPT_BACKLOG);
+        System.out.println("[SERVER] Прием соединений на порту " + PORT + ", " + ProcessClock.describe());
+        return socket;
+    }
+
+    // Без UDP-канала сервер работает как раньше: клиенты получают все по TCP.
+    // При передаче порта без простоя UDP-порт занят старым процессом до его остановки
+    private DatagramTransport openDatagrams() {
+        if (!UDP) return null;
+        try {
+            DatagramTransport transport = DatagramTransport.open(PORT, metrics);
+            transport.start();
+            return transport;
+        } catch (IOException e) {
+            System.out.println("[SERVER] UDP-канал недоступен, все сообщения по TCP: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Плавная остановка: сокет закрывается (порт переходит к новому процессу), новые матчи
+     * не начинаются, текущий доигрывается не дольше timeout, затем результаты записываются в БД.
+     */
+    public void drain(long timeout, TimeUnit unit) {
+        if (stopped.get()) return;
+        draining = true;
+        System.out.println("[SERVER] Плавная остановка: прием закрыт, ожидание окончания матча");
+
+        gameRoom.setDraining(true);
+        closeServerSocket();
+        if (directory != null) {
+            // Каталог сразу перестает направлять сюда игроков
+            directory.reportNow();
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (gameRoom.isGameStarted() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if (gameRoom.isGameStarted()) {
+            // Матч не успел закончиться: результаты игроков все равно сохраняются
+            System.out.println("[SERVER] Время ожидания истекло, матч прерван");
+            gameRoom.resetParamsGame();
+        }
+        stop();
+    }
+
+    private void rejectConnection(Socket clientSocket) {
+        metrics.connectionRejected();
+        try (Socket socket = clientSocket) {
+            Message rejection = new Message(MessageTypes.JOIN_REJECTED);
+            rejection.setReason("Сервер перегружен, попробуйте позже");
+            socket.getOutputStream().write((rejection.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Клиент уже отключился
         }
     }
 
     public void stop() {
+        if (!stopped.compareAndSet(false, true)) return;
+
+        closeServerSocket();
+        if (datagrams != null) {
+            datagrams.close();
+        }
+        stopClients();
+        timers.stop();
+        if (directory != null) {
+            directory.close();
+        }
+        if (checkpoints != null) {
+            // Закончившийся матч удаляет снимок, прерванный - оставляет для следующего запуска
+            checkpoints.save(gameRoom);
+            checkpoints.close();
+        }
+        if (!scoreboard.flush(SCORE_FLUSH_TIMEOUT, TimeUnit.SECONDS)) {
+            System.err.println("[SERVER] Не удалось дождаться записи результатов");
+        }
+        scoreboard.close(SCORE_FLUSH_TIMEOUT, TimeUnit.SECONDS);
+        System.out.println("[SERVER] Сервер остановлен");
+    }
+
+    // Обработчики при закрытии сохраняют места игроков и ставят результаты в очередь записи,
+    // поэтому снимок комнаты и база закрываются только после их завершения
+    private void stopClients() {
+        for (ClientHandler handler : handlers) {
+            handler.shutdown();
+        }
+        clientThreads.shutdown();
+        try {
+            if (!clientThreads.awaitTermination(CLIENT_STOP_TIMEOUT, TimeUnit.SECONDS)) {
+                System.err.println("[SERVER] Не все соединения закрылись за " + CLIENT_STOP_TIMEOUT + " с");
+                clientThreads.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            clientThreads.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeServerSocket() {
         try {
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
-            clientThreads.shutdownNow();
         } catch (IOException e) {
             System.err.println("Ошибка при остановке сервера: " + e.getMessage());
         }
@@ -53,9 +285,35 @@ public class GameServer {
     public static void main(String[] args) {
         GameServer server = new GameServer();
 
-        // Обработка завершения по Ctrl+C
-        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        // Ctrl+C / SIGTERM: короткая остановка, результаты записываются до выхода.
+        // Доиграть матч до конца - команда drain в консоли сервера
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.drain(SHUTDOWN_DRAIN_TIMEOUT, TimeUnit.SECONDS)));
+        Thread console = new Thread(() -> readCommands(server), "console");
+        console.setDaemon(true);
+        console.start();
 
         server.start();
     }
+
+    private static void readCommands(GameServer server) {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                switch (line.trim()) {
+                    case "drain" -> {
+                        server.drain(DRAIN_TIMEOUT, TimeUnit.SECONDS);
+                        System.exit(0);
+                    }
+                    case "stop" -> System.exit(0);
+                    case "" -> {
+                    }
+                    default -> System.out.println("[SERVER] Команды: drain - доиграть матч (не дольше " +
+                            DRAIN_TIMEOUT + " с) и остановиться, stop - остановиться");
+                }
+            }
+        } catch (IOException e) {
+            // Консоль недоступна (запуск без stdin): остановка только сигналом
+        }
+    }
 }
\ No newline at end of file
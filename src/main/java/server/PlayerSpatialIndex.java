@@ -0,0 +1,147 @@
+package server;
+
+import java.util.Arrays;
+
+/**
+ * Равномерная сетка слотов игроков для выборки по области интереса.
+ * Ячейки - плотный массив по размеру мира (координаты за краем попадают в крайние ячейки),
+ * поэтому поиск ячейки - арифметика без ключей-объектов.
+ * Обновляется инкрементально: при движении слот переносится, только если сменил ячейку.
+ * Индекс хранит только номера слотов; координаты - в таблице игроков, и все вызовы идут
+ * под ее блокировкой, поэтому своей синхронизации у индекса нет.
+ */
+final class PlayerSpatialIndex {
+    private static final int ABSENT = -1;
+
+    private final double bucketSize;
+    private final int columns;
+    private final int rows;
+    // Ячейка создается при первом игроке в ней
+    private final Bucket[] buckets;
+
+    // По слоту: номер ячейки (ABSENT - слота нет в индексе) и место слота в ее массиве
+    private int[] keyOfSlot = new int[16];
+    private int[] positionOfSlot = new int[16];
+
+    // Результат последнего query
+    private int[] result = new int[64];
+
+    // width, height - размер мира в пикселях
+    PlayerSpatialIndex(double bucketSize, double width, double height) {
+        this.bucketSize = bucketSize;
+        this.columns = Math.max(1, (int) Math.ceil(width / bucketSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / bucketSize));
+        this.buckets = new Bucket[columns * rows];
+        Arrays.fill(keyOfSlot, ABSENT);
+    }
+
+    void add(int slot, double x, double y) {
+        ensureCapacity(slot + 1);
+        if (keyOfSlot[slot] != ABSENT) {
+            removeFromBucket(slot);
+        }
+        addToBucket(slot, keyOf(x, y));
+    }
+
+    void remove(int slot) {
+        if (slot < keyOfSlot.length && keyOfSlot[slot] != ABSENT) {
+            removeFromBucket(slot);
+            keyOfSlot[slot] = ABSENT;
+        }
+    }
+
+    // Вызывается после изменения координат игрока
+    void update(int slot, double x, double y) {
+        if (slot >= keyOfSlot.length || keyOfSlot[slot] == ABSENT) return;
+
+        int newKey = keyOf(x, y);
+        if (keyOfSlot[slot] == newKey) return;
+
+        removeFromBucket(slot);
+        addToBucket(slot, newKey);
+    }
+
+    /**
+     * Слоты игроков в прямоугольнике (x ± halfWidth, y ± halfHeight) по координатам xs/ys таблицы.
+     * Возвращает их число; сами слоты - в начале result() до следующего вызова.
+     */
+    int query(double x, double y, double halfWidth, double halfHeight, double[] xs, double[] ys) {
+        int bx0 = column(x - halfWidth);
+        int bx1 = column(x + halfWidth);
+        int by0 = row(y - halfHeight);
+        int by1 = row(y + halfHeight);
+
+        int count = 0;
+        for (int by = by0; by <= by1; by++) {
+            for (int bx = bx0; bx <= bx1; bx++) {
+                Bucket bucket = buckets[by * columns + bx];
+                if (bucket == null) continue;
+
+                int[] slots = bucket.slots;
+                for (int i = 0; i < bucket.size; i++) {
+                    int slot = slots[i];
+                    if (Math.abs(xs[slot] - x) <= halfWidth && Math.abs(ys[slot] - y) <= halfHeight) {
+                        if (count == result.length) {
+                            result = Arrays.copyOf(result, count * 2);
+                        }
+                        result[count++] = slot;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    int[] result() {
+        return result;
+    }
+
+    private void addToBucket(int slot, int key) {
+        Bucket bucket = buckets[key];
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets[key] = bucket;
+        }
+        if (bucket.size == bucket.slots.length) {
+            bucket.slots = Arrays.copyOf(bucket.slots, bucket.size * 2);
+        }
+        positionOfSlot[slot] = bucket.size;
+        bucket.slots[bucket.size++] = slot;
+        keyOfSlot[slot] = key;
+    }
+
+    // Последний слот ячейки занимает место удаляемого
+    private void removeFromBucket(int slot) {
+        Bucket bucket = buckets[keyOfSlot[slot]];
+        int position = positionOfSlot[slot];
+        int last = bucket.slots[--bucket.size];
+        bucket.slots[position] = last;
+        positionOfSlot[last] = position;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= keyOfSlot.length) return;
+        int capacity = Math.max(required, keyOfSlot.length * 2);
+        int old = keyOfSlot.length;
+        keyOfSlot = Arrays.copyOf(keyOfSlot, capacity);
+        Arrays.fill(keyOfSlot, old, capacity, ABSENT);
+        positionOfSlot = Arrays.copyOf(positionOfSlot, capacity);
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / bucketSize)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / bucketSize)));
+    }
+
+    private int keyOf(double x, double y) {
+        return row(y) * columns + column(x);
+    }
+
+    private static final class Bucket {
+        int[] slots = new int[8];
+        int size = 0;
+    }
+}
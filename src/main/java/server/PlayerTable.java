@@ -0,0 +1,309 @@
+package server;
+
+import common.FieldGrid;
+import common.Player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Игроки комнаты в плотных массивах по номеру слота: координаты, признак жизни, признак бота
+ * и цвет клетки под игроком. Цвет обновляется при движении и при смене поля, поэтому итог
+ * раунда - проход по массивам со сравнением байтов.
+ * <p>
+ * id игрока - номер его слота строкой ("0", "17"): короткий в каждом снимке, а поиск слота по id -
+ * разбор числа без хеш-таблицы. Слоты ушедших игроков переиспользуются вместе с id; за слотом
+ * закреплено соединение игрока, если оно есть. Изменения и обходы массивов - под блокировкой таблицы.
+ * Наружу игрок отдается копией Player, снятой под блокировкой (snapshot, copy): слот может
+ * достаться другому игроку, а копия остается согласованной.
+ */
+final class PlayerTable {
+    static final int NONE = -1;
+
+    // Длиннее id не бывает: слотов меньше миллиарда
+    private static final int MAX_ID_LENGTH = 9;
+    // Кусок слотов на одну задачу параллельного подсчета итогов раунда
+    private static final int JUDGE_CHUNK = 4096;
+
+    private final FieldGrid field;
+
+    // Массивы заменяются только при росте, под блокировкой; names[slot] == null - слот свободен
+    private String[] ids = new String[16];
+    private String[] names = new String[16];
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private boolean[] alive = new boolean[16];
+    private boolean[] bots = new boolean[16];
+    private byte[] colors = new byte[16];
+    private RoomClient[] clients = new RoomClient[16];
+
+    private int[] freeSlots = new int[16];
+    private int freeCount = 0;
+    // Занятые слоты лежат в [0, limit)
+    private int limit = 0;
+    private int size = 0;
+    private int aliveCount = 0;
+    private int botCount = 0;
+
+    PlayerTable(FieldGrid field) {
+        this.field = field;
+    }
+
+    // Новый игрок получает свободный слот и id по его номеру
+    synchronized int add(String name, double x, double y, boolean isAlive, boolean isBot) {
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : limit++;
+        ensureCapacity(limit);
+
+        if (ids[slot] == null) {
+            ids[slot] = idOf(slot);
+        }
+        names[slot] = name;
+        xs[slot] = x;
+        ys[slot] = y;
+        alive[slot] = isAlive;
+        bots[slot] = isBot;
+        colors[slot] = field.colorAt(x, y);
+        clients[slot] = null;
+
+        size++;
+        if (isAlive) aliveCount++;
+        if (isBot) botCount++;
+        return slot;
+    }
+
+    // Копия удаленного игрока или null
+    synchronized Player remove(String id) {
+        int slot = slotOf(id);
+        if (slot == NONE) return null;
+
+        Player removed = snapshot(slot);
+        if (alive[slot]) aliveCount--;
+        if (bots[slot]) botCount--;
+        size--;
+        names[slot] = null;
+        clients[slot] = null;
+        alive[slot] = false;
+        bots[slot] = false;
+
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        return removed;
+    }
+
+    static String idOf(int slot) {
+        return Integer.toString(slot);
+    }
+
+    // Слот по id; NONE - id не выдан этой таблицей или его слот свободен
+    synchronized int slotOf(String id) {
+        if (id == null || id.isEmpty() || id.length() > MAX_ID_LENGTH) return NONE;
+        if (id.length() > 1 && id.charAt(0) == '0') return NONE;
+        int slot = 0;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') return NONE;
+            slot = slot * 10 + (c - '0');
+        }
+        return slot < limit && names[slot] != null ? slot : NONE;
+    }
+
+    // Копия игрока или null
+    synchronized Player get(String id) {
+        int slot = slotOf(id);
+        return slot != NONE ? snapshot(slot) : null;
+    }
+
+    synchronized boolean contains(String id) {
+        return slotOf(id) != NONE;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized int aliveCount() {
+        return aliveCount;
+    }
+
+    synchronized int botCount() {
+        return botCount;
+    }
+
+    synchronized List<String> ids() {
+        List<String> ids = new ArrayList<>(size);
+        for (int i = 0; i < limit; i++) {
+            if (names[i] != null) ids.add(this.ids[i]);
+        }
+        return ids;
+    }
+
+    // Единственный живой игрок или первый из живых (копия); null - живых нет
+    synchronized Player firstAlive() {
+        boolean[] alive = this.alive;
+        for (int i = 0; i < limit; i++) {
+            if (alive[i]) return snapshot(i);
+        }
+        return null;
+    }
+
+    // --- Доступ по слоту; вызывающий держит блокировку таблицы ---
+
+    int limit() {
+        return limit;
+    }
+
+    String id(int slot) {
+        return ids[slot];
+    }
+
+    String name(int slot) {
+        return names[slot];
+    }
+
+    // Новая копия игрока в слоте
+    Player snapshot(int slot) {
+        return copy(slot, new Player());
+    }
+
+    // Копия в target - для снимков, которые переиспользуют объекты между рассылками
+    Player copy(int slot, Player target) {
+        target.setId(ids[slot]);
+        target.setName(names[slot]);
+        target.setX(xs[slot]);
+        target.setY(ys[slot]);
+        target.setAlive(alive[slot]);
+        return target;
+    }
+
+    boolean isUsed(int slot) {
+        return names[slot] != null;
+    }
+
+    double x(int slot) {
+        return xs[slot];
+    }
+
+    double y(int slot) {
+        return ys[slot];
+    }
+
+    boolean isAlive(int slot) {
+        return alive[slot];
+    }
+
+    boolean isBot(int slot) {
+        return bots[slot];
+    }
+
+    // Соединение игрока в слоте; null - бот, игрок без соединения или ждущий переподключения
+    RoomClient client(int slot) {
+        return clients[slot];
+    }
+
+    // Закрепляет соединение за слотом; возвращает прежнее
+    RoomClient bind(int slot, RoomClient client) {
+        RoomClient previous = clients[slot];
+        clients[slot] = client;
+        return previous;
+    }
+
+    // Снимает соединение, только если за слотом закреплено именно оно
+    void unbind(int slot, RoomClient client) {
+        if (clients[slot] == client) {
+            clients[slot] = null;
+        }
+    }
+
+    void move(int slot, double x, double y) {
+        xs[slot] = x;
+        ys[slot] = y;
+        colors[slot] = field.colorAt(x, y);
+    }
+
+    void eliminate(int slot) {
+        if (alive[slot]) {
+            alive[slot] = false;
+            aliveCount--;
+        }
+    }
+
+    /**
+     * Итог раунда: eliminated[i] - живой игрок в слоте i стоит не на targetColor. Возвращает число
+     * выбывших; сами игроки не меняются. parallel - слоты делятся на куски по JUDGE_CHUNK и
+     * считаются в общем пуле fork-join: потоки пула только читают массивы, пока вызывающий держит
+     * блокировку, и пишут каждый в свой диапазон eliminated.
+     */
+    int judge(byte targetColor, boolean[] eliminated, boolean parallel) {
+        int limit = this.limit;
+        int chunks = (limit + JUDGE_CHUNK - 1) / JUDGE_CHUNK;
+        if (!parallel || chunks < 2) {
+            return judgeRange(targetColor, eliminated, 0, limit);
+        }
+        return IntStream.range(0, chunks).parallel()
+                .map(c -> judgeRange(targetColor, eliminated, c * JUDGE_CHUNK, Math.min(limit, (c + 1) * JUDGE_CHUNK)))
+                .sum();
+    }
+
+    private int judgeRange(byte targetColor, boolean[] eliminated, int from, int to) {
+        boolean[] alive = this.alive;
+        byte[] colors = this.colors;
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            boolean out = alive[i] && colors[i] != targetColor;
+            eliminated[i] = out;
+            if (out) count++;
+        }
+        return count;
+    }
+
+    // Массивы целиком - для проходов по всем слотам под блокировкой
+    boolean[] aliveArray() {
+        return alive;
+    }
+
+    boolean[] botArray() {
+        return bots;
+    }
+
+    byte[] colorArray() {
+        return colors;
+    }
+
+    double[] xArray() {
+        return xs;
+    }
+
+    double[] yArray() {
+        return ys;
+    }
+
+    /**
+     * Поле сменилось (новый раунд, сброс, восстановление): цвета под всеми игроками пересчитываются.
+     */
+    synchronized void refreshColors() {
+        double[] xs = this.xs;
+        double[] ys = this.ys;
+        byte[] colors = this.colors;
+        String[] names = this.names;
+        for (int i = 0; i < limit; i++) {
+            if (names[i] != null) colors[i] = field.colorAt(xs[i], ys[i]);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= xs.length) return;
+        int capacity = Math.max(required, xs.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        names = Arrays.copyOf(names, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        alive = Arrays.copyOf(alive, capacity);
+        bots = Arrays.copyOf(bots, capacity);
+        colors = Arrays.copyOf(colors, capacity);
+        clients = Arrays.copyOf(clients, capacity);
+    }
+}
@@ -0,0 +1,221 @@
+package server;
+
+import common.ColorDistanceField;
+import common.FieldGrid;
+import common.GameSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Боты комнаты: игроки без сокета, которые обновляются пачкой на тике раунда.
+ * Позиции ботов живут в таблице игроков комнаты; здесь - номер слота и состояние движения.
+ * В начале раунда каждый бот выжидает время реакции, затем идет к ближайшей клетке нужного цвета
+ * по таблице ColorDistanceField (окно вокруг бота, как у подсказки направления в клиенте).
+ * С вероятностью MISTAKE_CHANCE бот путает цвет, поэтому матч из одних ботов заканчивается.
+ */
+class RoomBots {
+    // Скорость как у клиента: MOVE_SPEED пикселей за кадр при 60 кадрах в секунду
+    private static final double SPEED = GameSettings.MOVE_SPEED * 60;
+    private static final long MIN_REACTION = 300_000_000L;
+    private static final long MAX_REACTION = 1_500_000_000L;
+    private static final double MISTAKE_CHANCE = 0.15;
+    // Боты большого мира обходят много окон поля: таблицы хранятся только для последних
+    private static final int MAX_WINDOWS = 64;
+
+    private final GameRoom room;
+    private final PlayerTable players;
+    private final Random random;
+    private final Map<String, Integer> slotOfBot = new HashMap<>();
+    private int nextNumber = 1;
+
+    // Состояние ботов по порядку; slots - слот бота в таблице игроков
+    private String[] ids = new String[16];
+    private int[] slots = new int[16];
+    private long[] reactAt = new long[16];
+    private byte[] goalColor = new byte[16];
+    private double[] targetX = new double[16];
+    private double[] targetY = new double[16];
+    private boolean[] hasTarget = new boolean[16];
+    private int count = 0;
+
+    // Таблицы ближайших клеток по окнам поля; ключ - начало окна, порядок - по последнему обращению
+    private final LinkedHashMap<Long, ColorDistanceField> windows = new LinkedHashMap<>(16, 0.75f, true);
+    private FieldGrid field;
+    private long lastTick;
+
+    RoomBots(GameRoom room, PlayerTable players, Random random) {
+        this.room = room;
+        this.players = players;
+        this.random = random;
+    }
+
+    // Имя нового бота; id выдает таблица игроков, после добавления в нее бот регистрируется через add
+    synchronized String nextName() {
+        return "Бот " + nextNumber++;
+    }
+
+    synchronized void add(String id, int slot) {
+        ensureCapacity(count + 1);
+        ids[count] = id;
+        slots[count] = slot;
+        hasTarget[count] = false;
+        reactAt[count] = Long.MAX_VALUE;
+        slotOfBot.put(id, count);
+        count++;
+    }
+
+    synchronized boolean remove(String playerId) {
+        Integer slot = slotOfBot.remove(playerId);
+        if (slot == null) return false;
+
+        // Последний бот занимает освободившийся слот
+        int last = --count;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            slots[slot] = slots[last];
+            reactAt[slot] = reactAt[last];
+            goalColor[slot] = goalColor[last];
+            targetX[slot] = targetX[last];
+            targetY[slot] = targetY[last];
+            hasTarget[slot] = hasTarget[last];
+            slotOfBot.put(ids[slot], slot);
+        }
+        ids[last] = null;
+        return true;
+    }
+
+    synchronized boolean isBot(String playerId) {
+        return slotOfBot.containsKey(playerId);
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    synchronized List<String> ids() {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(this.ids[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Новый раунд: поле сменилось, каждый бот выбирает цвет и время реакции.
+     */
+    synchronized void startRound(FieldGrid field, byte targetColor, long now) {
+        this.field = field;
+        this.lastTick = now;
+        for (ColorDistanceField window : windows.values()) {
+            window.setField(field, window.getOriginX(), window.getOriginY());
+        }
+
+        int colors = GameSettings.ROUND_COLORS.length;
+        for (int i = 0; i < count; i++) {
+            reactAt[i] = now + MIN_REACTION + (long) (random.nextDouble() * (MAX_REACTION - MIN_REACTION));
+            goalColor[i] = random.nextDouble() < MISTAKE_CHANCE
+                    ? (byte) ((targetColor + 1 + random.nextInt(colors - 1)) % colors)
+                    : targetColor;
+            hasTarget[i] = false;
+        }
+    }
+
+    /**
+     * Шаг всех ботов на тике раунда: сдвиг к цели на расстояние, пройденное с прошлого тика.
+     */
+    synchronized void tick(long now) {
+        if (count == 0 || field == null) return;
+        double step = SPEED * (now - lastTick) / 1_000_000_000.0;
+        lastTick = now;
+
+        // Все боты за одну блокировку таблицы: позиции читаются и пишутся по слотам подряд
+        synchronized (players) {
+            for (int i = 0; i < count; i++) {
+                int slot = slots[i];
+                if (now < reactAt[i] || !players.isAlive(slot)) continue;
+
+                double x = players.x(slot);
+                double y = players.y(slot);
+                if (!hasTarget[i] && !chooseTarget(i, x, y)) continue;
+
+                double dx = targetX[i] - x;
+                double dy = targetY[i] - y;
+                double distance = Math.sqrt(dx * dx + dy * dy);
+                if (distance < 0.5) continue;
+
+                double k = Math.min(1, step / distance);
+                room.moveBot(slot, x + dx * k, y + dy * k);
+            }
+        }
+    }
+
+    // Цель - случайная точка внутри ближайшей клетки нужного цвета, чтобы боты не стояли друг на друге
+    private boolean chooseTarget(int i, double x, double y) {
+        int gx = FieldGrid.cellOf(x);
+        int gy = FieldGrid.cellOf(y);
+        int target = windowFor(gx, gy).nearestCell(goalColor[i], gx, gy);
+        if (target == ColorDistanceField.NONE) {
+            // В окне нет такого цвета - бот остается на месте до конца раунда
+            reactAt[i] = Long.MAX_VALUE;
+            return false;
+        }
+
+        double margin = GameSettings.CELL_SIZE * 0.2;
+        targetX[i] = (target % field.getWidth()) * GameSettings.CELL_SIZE + margin +
+                random.nextDouble() * (GameSettings.CELL_SIZE - 2 * margin);
+        targetY[i] = (target / field.getWidth()) * GameSettings.CELL_SIZE + margin +
+                random.nextDouble() * (GameSettings.CELL_SIZE - 2 * margin);
+        hasTarget[i] = true;
+        return true;
+    }
+
+    // Таблица окна вокруг клетки; окна с тем же началом делят одну таблицу
+    private ColorDistanceField windowFor(int gx, int gy) {
+        int width = ColorDistanceField.windowSize(field.getWidth());
+        int height = ColorDistanceField.windowSize(field.getHeight());
+        int originX = ColorDistanceField.windowOrigin(gx, field.getWidth(), width);
+        int originY = ColorDistanceField.windowOrigin(gy, field.getHeight(), height);
+
+        long key = ((long) originX << 32) | originY;
+        ColorDistanceField window = windows.get(key);
+        if (window == null || window.getWidth() != width || window.getHeight() != height) {
+            window = takeWindow(width, height);
+            windows.put(key, window);
+        }
+        window.placeAround(field, gx, gy);
+        return window;
+    }
+
+    // Сверх MAX_WINDOWS вытесняется таблица окна, к которому дольше всего не обращались;
+    // ее массивы переиспользуются для нового окна
+    private ColorDistanceField takeWindow(int width, int height) {
+        if (windows.size() >= MAX_WINDOWS) {
+            Iterator<ColorDistanceField> eldest = windows.values().iterator();
+            ColorDistanceField window = eldest.next();
+            eldest.remove();
+            if (window.getWidth() == width && window.getHeight() == height) {
+                return window;
+            }
+        }
+        return new ColorDistanceField(width, height, GameSettings.ROUND_COLORS.length);
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= ids.length) return;
+        int capacity = Math.max(size, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+        reactAt = Arrays.copyOf(reactAt, capacity);
+        goalColor = Arrays.copyOf(goalColor, capacity);
+        targetX = Arrays.copyOf(targetX, capacity);
+        targetY = Arrays.copyOf(targetY, capacity);
+        hasTarget = Arrays.copyOf(hasTarget, capacity);
+    }
+}
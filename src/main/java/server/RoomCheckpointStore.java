@@ -0,0 +1,170 @@
+package server;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Периодические снимки состояния комнаты для восстановления после падения сервера.
+ * Снимок пишется во временный файл через FileChannel и атомарно заменяет предыдущий,
+ * поэтому на диске всегда лежит целый снимок. Формат: заголовок, состояние комнаты, CRC32.
+ * <p>
+ * Снимки ведет только процесс, удерживающий блокировку файла комнаты: при передаче порта новому
+ * процессу он не восстанавливает матч, который еще доигрывает старый, и начинает писать снимки,
+ * когда старый завершится.
+ */
+public class RoomCheckpointStore {
+    private static final int MAGIC = 0x43524331; // "CRC1"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final Path tempFile;
+    private final FileChannel lockChannel;
+    private FileLock lock;
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private boolean hasCheckpoint;
+
+    public RoomCheckpointStore(Path directory, String roomName) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(roomName + ".ckpt");
+        this.tempFile = directory.resolve(roomName + ".ckpt.tmp");
+        this.hasCheckpoint = Files.exists(file);
+        this.lockChannel = FileChannel.open(directory.resolve(roomName + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private boolean tryLock() {
+        if (lock != null) return true;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (IOException | OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock != null) {
+            System.out.println("[CHECKPOINT] Снимки комнаты ведет этот процесс: " + file);
+        }
+        return lock != null;
+    }
+
+    public void close() {
+        try {
+            if (lock != null) {
+                lock.release();
+                lock = null;
+            }
+            lockChannel.close();
+        } catch (IOException e) {
+            System.err.println("[CHECKPOINT][ERROR] " + e.getMessage());
+        }
+    }
+
+    /**
+     * Снимки раз в interval; пока матч не идет, снимок удаляется.
+     */
+    public void start(TimerWheel timers, GameRoom room, long interval, TimeUnit unit) {
+        timers.scheduleAtFixedRate(() -> save(room), interval, interval, unit);
+    }
+
+    public synchronized void save(GameRoom room) {
+        if (!tryLock()) return;
+        try {
+            while (true) {
+                buffer.clear();
+                buffer.putInt(MAGIC);
+                buffer.putShort(VERSION);
+                try {
+                    if (!room.writeCheckpoint(buffer)) {
+                        delete();
+                        return;
+                    }
+                    if (buffer.remaining() < 8) throw new BufferOverflowException();
+                    break;
+                } catch (BufferOverflowException e) {
+                    // Игроков стало больше, чем помещается в буфер
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                }
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, buffer.position());
+            buffer.putLong(crc.getValue());
+            buffer.flip();
+
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            hasCheckpoint = true;
+        } catch (IOException e) {
+            System.err.println("[CHECKPOINT][ERROR] Не удалось сохранить снимок комнаты: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Восстанавливает комнату из последнего снимка. false - снимка нет или он поврежден.
+     */
+    public synchronized boolean restore(GameRoom room) {
+        if (!tryLock()) {
+            System.out.println("[CHECKPOINT] Снимки ведет другой процесс, восстановление пропущено");
+            return false;
+        }
+        if (!Files.exists(file)) return false;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < HEADER_SIZE + 8 || in.getInt() != MAGIC || in.getShort() != VERSION) {
+                System.err.println("[CHECKPOINT][ERROR] Неизвестный формат снимка: " + file);
+                return false;
+            }
+
+            byte[] content = new byte[in.limit() - 8];
+            in.get(0, content);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if (crc.getValue() != in.getLong(in.limit() - 8)) {
+                System.err.println("[CHECKPOINT][ERROR] Снимок поврежден: " + file);
+                return false;
+            }
+
+            ByteBuffer state = ByteBuffer.wrap(content, HEADER_SIZE, content.length - HEADER_SIZE);
+            return room.restoreCheckpoint(state);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[CHECKPOINT][ERROR] Не удалось прочитать снимок: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public void delete() throws IOException {
+        if (!hasCheckpoint) return;
+        Files.deleteIfExists(file);
+        hasCheckpoint = false;
+    }
+
+    static void putString(ByteBuffer out, String value) {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xffff];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
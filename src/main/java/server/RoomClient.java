@@ -0,0 +1,25 @@
+package server;
+
+import common.Message;
+
+/**
+ * Получатель рассылок комнаты. На сервере это ClientHandler с сокетом,
+ * в симуляции - клиент в памяти.
+ */
+public interface RoomClient {
+
+    // null - клиент еще не вошел в игру или это наблюдатель
+    String getPlayerId();
+
+    // Сообщение сериализуется до возврата: комната переиспользует снимки и их списки игроков
+    void sendMessage(Message message);
+
+    // Уже сериализованное сообщение (одна строка JSON на всех получателей)
+    void sendRawMessage(String json);
+
+    // Отключить клиента, не удаляя игрока из комнаты
+    void release();
+
+    // Игрок удален из комнаты: клиент больше не управляет им, id может достаться другому игроку
+    void playerRemoved(String playerId);
+}
@@ -0,0 +1,28 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Часы и планировщик комнаты. На сервере это TimerWheel с реальным временем,
+ * в симуляции - server.sim.VirtualScheduler, где время двигает сам тест.
+ */
+public interface Scheduler {
+
+    // Текущее время в наносекундах; только для разностей, как System.nanoTime
+    long nanoTime();
+
+    Timeout schedule(Runnable task, long delay, TimeUnit unit);
+
+    Timeout scheduleAt(Runnable task, long deadlineNanos);
+
+    /**
+     * Периодическая задача со сроками first + k * period.
+     */
+    Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit);
+
+    interface Timeout {
+        void cancel();
+
+        boolean isCancelled();
+    }
+}
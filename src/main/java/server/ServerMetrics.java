@@ -0,0 +1,138 @@
+package server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики защиты сервера: соединения, отклоненные подключения, отброшенные сообщения,
+ * исходящий трафик до и после сжатия кадров, работа UDP-канала.
+ * Раз в LOG_INTERVAL секунд выводит изменения, если они были.
+ */
+public class ServerMetrics {
+    private static final int LOG_INTERVAL = 10;
+
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder rejectedJoins = new LongAdder();
+    private final LongAdder droppedOutbound = new LongAdder();
+    private final LongAdder abusiveDisconnects = new LongAdder();
+    private final Map<String, LongAdder> throttled = new ConcurrentHashMap<>();
+    private final LongAdder jsonBytesSent = new LongAdder();
+    private final LongAdder wireBytesSent = new LongAdder();
+    private final LongAdder datagramsSent = new LongAdder();
+    private final LongAdder datagramsReceived = new LongAdder();
+    private final LongAdder datagramMovesLost = new LongAdder();
+    private final LongAdder datagramMovesStale = new LongAdder();
+    private final LongAdder datagramFallbacks = new LongAdder();
+    private final LongAdder datagramsOversized = new LongAdder();
+
+    private String lastReport = "";
+
+    public void start(TimerWheel timers) {
+        timers.scheduleAtFixedRate(this::report, LOG_INTERVAL, LOG_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    public int connectionOpened() {
+        return activeConnections.incrementAndGet();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    public void connectionRejected() {
+        rejectedConnections.increment();
+    }
+
+    public void joinRejected() {
+        rejectedJoins.increment();
+    }
+
+    public void messageThrottled(String type) {
+        throttled.computeIfAbsent(type, t -> new LongAdder()).increment();
+    }
+
+    public void outboundDropped() {
+        droppedOutbound.increment();
+    }
+
+    public void abusiveDisconnect() {
+        abusiveDisconnects.increment();
+    }
+
+    // Кадр ушел в сокет: размер JSON и размер на проводе (меньше, если кадр сжат)
+    public void frameSent(int jsonBytes, int wireBytes) {
+        jsonBytesSent.add(jsonBytes);
+        wireBytesSent.add(wireBytes);
+    }
+
+    public void datagramSent() {
+        datagramsSent.increment();
+    }
+
+    public void datagramReceived() {
+        datagramsReceived.increment();
+    }
+
+    // Движения по UDP: пропущенные номера и пришедшие позже более новых
+    public void datagramsLost(long lost, long stale) {
+        datagramMovesLost.add(lost);
+        datagramMovesStale.add(stale);
+    }
+
+    // Клиент перестал отвечать по UDP, снимки вернулись на TCP
+    public void datagramFallback() {
+        datagramFallbacks.increment();
+    }
+
+    // Снимок больше предела датаграммы ушел по TCP
+    public void datagramOversized() {
+        datagramsOversized.increment();
+    }
+
+    public long getThrottled(String type) {
+        LongAdder counter = throttled.get(type);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    private void report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("соединений ").append(activeConnections.get())
+                .append(", отклонено соединений ").append(rejectedConnections.sum())
+                .append(", отказов во входе ").append(rejectedJoins.sum())
+                .append(", отброшено исходящих ").append(droppedOutbound.sum())
+                .append(", отключено за флуд ").append(abusiveDisconnects.sum())
+                .append(", ограничено входящих ").append(throttledSummary())
+                .append(", отправлено КБ ").append(wireBytesSent.sum() / 1024)
+                .append(" (JSON ").append(jsonBytesSent.sum() / 1024).append(')')
+                .append(", UDP: отправлено ").append(datagramsSent.sum())
+                .append(", принято ").append(datagramsReceived.sum())
+                .append(", потеряно движений ").append(datagramMovesLost.sum())
+                .append(", устаревших ").append(datagramMovesStale.sum())
+                .append(", снимков по TCP из-за размера ").append(datagramsOversized.sum())
+                .append(", возвратов на TCP ").append(datagramFallbacks.sum());
+
+        String report = sb.toString();
+        if (!report.equals(lastReport)) {
+            lastReport = report;
+            System.out.println("[METRICS] " + report);
+        }
+    }
+
+    private String throttledSummary() {
+        if (throttled.isEmpty()) return "0";
+        StringBuilder sb = new StringBuilder("{");
+        throttled.forEach((type, counter) -> {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(type).append('=').append(counter.sum());
+        });
+        return sb.append('}').toString();
+    }
+}
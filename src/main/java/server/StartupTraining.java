@@ -0,0 +1,119 @@
+package server;
+
+import common.FrameCompression;
+import common.Message;
+import common.MessageTypes;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Обучающий прогон сервера для архива CDS (профиль fast-start в pom.xml): загружает классы,
+ * которые нужны узлу при старте и в первые секунды работы, и завершается. Запускается с
+ * -XX:ArchiveClassesAtExit=<архив>; скрипт запуска затем подключает архив через -XX:SharedArchiveFile.
+ * <p>
+ * Прогон: настоящий GameServer на свободном порту с ботами в лобби, к нему подключаются
+ * несколько клиентов по сокету (CONNECT со сжатием кадров, MOVE). Лежит в основных исходниках:
+ * архив CDS привязан к пути jar, поэтому прогон идет из того же lib/ColorRush.jar, что и сервер.
+ */
+public class StartupTraining {
+    private static final int CLIENTS = 3;
+    private static final int BOTS = 8;
+    private static final int READ_TIMEOUT = 500;
+    private static final int CONNECT_TIMEOUT = 2000;
+
+    public static void main(String[] args) throws Exception {
+        long started = System.nanoTime();
+
+        // До первого обращения к GameServer: порт и каталоги читаются при загрузке класса
+        System.setProperty("colorrush.port", String.valueOf(freePort()));
+        System.setProperty("colorrush.replayDir", "");
+        System.setProperty("colorrush.checkpointDir", "");
+        // Боты загружают классы комнаты, которые иначе понадобятся только в первом матче
+        System.setProperty("colorrush.botFill", String.valueOf(BOTS));
+
+        GameServer server = new GameServer();
+        Thread acceptor = new Thread(server::start, "training-server");
+        acceptor.start();
+
+        int port = Integer.getInteger("colorrush.port");
+        int received = 0;
+        for (int i = 0; i < CLIENTS; i++) {
+            received += playClient(port, "Обучение " + (i + 1));
+        }
+
+        server.stop();
+        acceptor.join(CONNECT_TIMEOUT);
+        System.out.println("[SERVER] Обучающий прогон: клиентов " + CLIENTS + ", сообщений " + received +
+                String.format(", %.0f мс", (System.nanoTime() - started) / 1e6));
+    }
+
+    private static int playClient(int port, String name) throws IOException {
+        Socket socket = connect(port);
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            socket.setSoTimeout(READ_TIMEOUT);
+            OutputStream outStream = socket.getOutputStream();
+
+            Message connect = new Message(MessageTypes.CONNECT);
+            connect.setPlayerName(name);
+            connect.setCompression(FrameCompression.DEFLATE);
+            send(outStream, connect);
+
+            Message move = new Message(MessageTypes.MOVE);
+            move.setX(100);
+            move.setY(100);
+            send(outStream, move);
+
+            FrameCompression compression = new FrameCompression();
+            int received = 0;
+            try {
+                String line;
+                while (received < 5 && (line = in.readLine()) != null) {
+                    Message.fromJson(compression.decode(line));
+                    received++;
+                }
+            } catch (SocketTimeoutException e) {
+                // Сервер больше ничего не прислал - для прогрева достаточно
+            }
+
+            send(outStream, new Message(MessageTypes.DISCONNECT));
+            return received;
+        }
+    }
+
+    // Сервер открывает сокет в своем потоке; ждем, пока он начнет принимать соединения
+    private static Socket connect(int port) throws IOException {
+        long deadline = System.nanoTime() + CONNECT_TIMEOUT * 1_000_000L;
+        while (true) {
+            try {
+                return new Socket("localhost", port);
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) throw e;
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static void send(OutputStream out, Message message) throws IOException {
+        out.write((message.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
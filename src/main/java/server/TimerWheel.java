@@ -0,0 +1,213 @@
+package server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общий для сервера хешированный таймер (timer wheel). Все сроки отсчитываются
+ * от монотонного System.nanoTime, поэтому задержки планировщика не накапливаются.
+ * Один поток обслуживает колесо, задачи выполняются в общем пуле фиксированного размера,
+ * так что число потоков не зависит от количества комнат.
+ */
+public class TimerWheel implements Scheduler {
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final ExecutorService workers;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick = 0;
+
+    public TimerWheel(long tickDuration, TimeUnit unit, int wheelSize, int workerThreads) {
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "timer-task");
+            t.setDaemon(true);
+            return t;
+        });
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, "timer-wheel");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return scheduleAt(task, nanoTime() + unit.toNanos(delay));
+    }
+
+    @Override
+    public Timeout scheduleAt(Runnable task, long deadlineNanos) {
+        return add(new Timeout(task, deadlineNanos, 0));
+    }
+
+    /**
+     * Периодическая задача. Сроки считаются от первого: first + k * period,
+     * поэтому опоздание одного запуска не сдвигает следующие.
+     */
+    @Override
+    public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return add(new Timeout(task, nanoTime() + unit.toNanos(initialDelay), unit.toNanos(period)));
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+        workers.shutdownNow();
+    }
+
+    private Timeout add(Timeout timeout) {
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (running) {
+            long tickDeadline = startTime + (tick + 1) * tickNanos;
+            long sleepNanos = tickDeadline - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) return;
+                }
+            }
+
+            transferPending();
+            expire(wheel[(int) (tick & mask)], System.nanoTime());
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (!timeout.cancelled) {
+                place(timeout);
+            }
+        }
+    }
+
+    private void place(Timeout timeout) {
+        long ticks = Math.max((timeout.deadline - startTime + tickNanos - 1) / tickNanos, tick);
+        timeout.remainingRounds = (ticks - tick) / wheel.length;
+        wheel[(int) (ticks & mask)].add(timeout);
+    }
+
+    private void expire(Bucket bucket, long now) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.cancelled) {
+                bucket.remove(timeout);
+            } else if (timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+                bucket.remove(timeout);
+                fire(timeout);
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    private void fire(Timeout timeout) {
+        try {
+            workers.execute(() -> run(timeout));
+        } catch (Exception e) {
+            // Пул остановлен
+        }
+    }
+
+    private void run(Timeout timeout) {
+        if (timeout.cancelled) return;
+        try {
+            timeout.task.run();
+        } catch (Exception e) {
+            System.err.println("[TIMER][ERROR] Ошибка в задаче таймера: " + e.getMessage());
+            e.printStackTrace();
+        }
+
+        // Периодическая задача планируется заново только после завершения, запуски не перекрываются.
+        // Следующий срок - ближайший в будущем на сетке first + k * period
+        if (timeout.period > 0 && !timeout.cancelled && running) {
+            long missed = Math.max(0, (nanoTime() - timeout.deadline) / timeout.period);
+            timeout.deadline += (missed + 1) * timeout.period;
+            add(timeout);
+        }
+    }
+
+    public static final class Timeout implements Scheduler.Timeout {
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        // Двусвязный список внутри ячейки колеса (доступ только из потока колеса)
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline, long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package server;
+
+/**
+ * Ограничитель частоты "ведро с токенами": rate токенов в секунду, не больше burst про запас.
+ * Не потокобезопасен - каждое соединение читает сообщения в одном потоке.
+ */
+public class TokenBucket {
+    private final double ratePerNano;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double ratePerSecond, double burst) {
+        this.ratePerNano = ratePerSecond / 1_000_000_000.0;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerNano);
+        lastRefill = now;
+
+        if (tokens < 1) return false;
+        tokens -= 1;
+        return true;
+    }
+}
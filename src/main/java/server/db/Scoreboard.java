@@ -0,0 +1,15 @@
+package server.db;
+
+import common.ScoreboardEntry;
+
+import java.util.List;
+
+/**
+ * Таблица рекордов, которой пользуется комната.
+ */
+public interface Scoreboard {
+
+    void updateIfBetter(String playerName, int newScore);
+
+    List<ScoreboardEntry> getTop(int limit);
+}
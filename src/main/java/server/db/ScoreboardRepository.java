@@ -5,11 +5,27 @@ import common.ScoreboardEntry;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
-
-public class ScoreboardRepository {
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Все обращения к БД выполняются по очереди в одном потоке: запись результата не задерживает
+ * комнату, а чтение ТОП-а видит все записи, поставленные в очередь до него.
+ */
+public class ScoreboardRepository implements Scoreboard {
 
     private static final String DB_URL = "jdbc:sqlite:scoreboard.db";
 
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "scoreboard-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
     public ScoreboardRepository() {
         init();
     }
@@ -31,10 +47,21 @@ public class ScoreboardRepository {
     }
 
     /**
-     * Обновить результат, ТОЛЬКО если он лучше предыдущего
+     * Обновить результат, ТОЛЬКО если он лучше предыдущего (асинхронно)
      */
+    @Override
     public void updateIfBetter(String playerName, int newScore) {
         if (newScore < 5) return;
+        writer.execute(() -> {
+            try {
+                writeIfBetter(playerName, newScore);
+            } catch (RuntimeException e) {
+                System.err.println("[DB][ERROR] " + e.getMessage() + ": " + playerName + " = " + newScore);
+            }
+        });
+    }
+
+    private void writeIfBetter(String playerName, int newScore) {
         String sql = """
                     INSERT INTO scoreboard (player_name, score)
                     VALUES (?, ?)
@@ -58,7 +85,49 @@ public class ScoreboardRepository {
     /**
      * Получить ТОП N игроков
      */
+    @Override
     public List<ScoreboardEntry> getTop(int limit) {
+        try {
+            return writer.submit(() -> readTop(limit)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Чтение рейтинга прервано", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Ошибка чтения рейтинга", e.getCause());
+        }
+    }
+
+    /**
+     * Дождаться записи всех результатов, поставленных в очередь. false - не успели за timeout.
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        Future<?> marker = writer.submit(() -> { });
+        try {
+            marker.get(timeout, unit);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Записывает оставшиеся результаты и останавливает поток записи.
+     */
+    public void close(long timeout, TimeUnit unit) {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(timeout, unit)) {
+                System.err.println("[DB][ERROR] Не все результаты записаны до остановки");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<ScoreboardEntry> readTop(int limit) {
         String sql = """
                     SELECT player_name, score
                     FROM scoreboard
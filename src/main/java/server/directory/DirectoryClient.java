@@ -0,0 +1,98 @@
+package server.directory;
+
+import common.Message;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Отчеты узла в каталог серверов: раз в REPORT_INTERVAL по постоянному соединению.
+ * При обрыве соединение восстанавливается на следующем отчете.
+ * Подключение и запись блокируются, пока каталог недоступен, поэтому отчеты идут в своем потоке,
+ * а не на таймерах комнат.
+ */
+public class DirectoryClient {
+    private static final long REPORT_INTERVAL = 1000;
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    private final String directoryHost;
+    private final int directoryPort;
+    private final Supplier<Message> status;
+    private final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "directory-reporter");
+        t.setDaemon(true);
+        return t;
+    });
+    private Socket socket;
+    private OutputStream out;
+    private boolean warned = false;
+
+    public DirectoryClient(String address, Supplier<Message> status) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Адрес каталога должен быть вида host:port: " + address);
+        }
+        this.directoryHost = address.substring(0, colon);
+        this.directoryPort = Integer.parseInt(address.substring(colon + 1));
+        this.status = status;
+    }
+
+    public void start() {
+        reporter.scheduleWithFixedDelay(this::report, 0, REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    // Внеочередной отчет (смена состояния узла), не дожидаясь периода
+    public void reportNow() {
+        try {
+            reporter.execute(this::report);
+        } catch (RejectedExecutionException e) {
+            // Узел уже остановлен
+        }
+    }
+
+    private synchronized void report() {
+        try {
+            if (socket == null || socket.isClosed()) {
+                Socket newSocket = new Socket();
+                newSocket.connect(new InetSocketAddress(directoryHost, directoryPort), CONNECT_TIMEOUT);
+                socket = newSocket;
+                out = newSocket.getOutputStream();
+                warned = false;
+                System.out.println("[SERVER] Подключен к каталогу " + directoryHost + ":" + directoryPort);
+            }
+            out.write((status.get().toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            // Одно сообщение на каждый период недоступности каталога
+            if (!warned) {
+                System.err.println("[SERVER] Нет связи с каталогом: " + e.getMessage());
+                warned = true;
+            }
+            closeSocket();
+        }
+    }
+
+    public void close() {
+        reporter.shutdownNow();
+        closeSocket();
+    }
+
+    private synchronized void closeSocket() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException ignored) {
+        }
+        socket = null;
+        out = null;
+    }
+}
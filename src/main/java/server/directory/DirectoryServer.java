@@ -0,0 +1,174 @@
+package server.directory;
+
+import common.Message;
+import common.MessageTypes;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Каталог игровых серверов. Узлы (GameServer с -Dcolorrush.directory=host:port) раз в секунду
+ * присылают NODE_STATUS с адресом и нагрузкой. Клиент подключается к каталогу как к обычному
+ * серверу, отправляет CONNECT и получает REDIRECT на узел, куда затем подключается сам.
+ * <p>
+ * Игрок направляется в лобби, где уже ждут игроки (чтобы быстрее набрался матч), иначе -
+ * на наименее нагруженный узел, где начнется новая комната. Наблюдатель - на узел с идущим матчем.
+ * <p>
+ * Несколько локальных процессов:
+ * <pre>
+ * java -cp ... server.directory.DirectoryServer
+ * java -cp ... -Dcolorrush.port=5557 -Dcolorrush.directory=localhost:5550 server.GameServer
+ * java -cp ... -Dcolorrush.port=5558 -Dcolorrush.directory=localhost:5550 server.GameServer
+ * </pre>
+ * Клиент подключается к localhost:5550.
+ */
+public class DirectoryServer {
+    private static final int PORT = Integer.getInteger("colorrush.directoryPort", 5550);
+    // Узел без отчета дольше этого срока (мс) считается недоступным
+    private static final long NODE_TIMEOUT = 3000;
+
+    private final Map<String, NodeStatus> nodes = new ConcurrentHashMap<>();
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+
+    public void start() {
+        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
+            System.out.println("[DIRECTORY] Каталог серверов на порту " + PORT);
+            while (!Thread.currentThread().isInterrupted()) {
+                Socket socket = serverSocket.accept();
+                connections.submit(() -> handleConnection(socket));
+            }
+        } catch (IOException e) {
+            System.err.println("[DIRECTORY][ERROR] " + e.getMessage());
+        } finally {
+            connections.shutdownNow();
+        }
+    }
+
+    // Первое сообщение определяет, кто подключился: узел или клиент
+    private void handleConnection(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            socket.setSoTimeout((int) NODE_TIMEOUT * 2);
+            String line = in.readLine();
+            if (line == null || line.isBlank()) return;
+
+            Message first = Message.fromJson(line);
+            if (MessageTypes.NODE_STATUS.equals(first.getType())) {
+                handleNode(first, in);
+            } else if (MessageTypes.CONNECT.equals(first.getType())) {
+                handleClient(first, socket.getOutputStream());
+            }
+        } catch (IOException | RuntimeException e) {
+            // Узел или клиент отключился
+        }
+    }
+
+    private void handleNode(Message status, BufferedReader in) throws IOException {
+        String key = status.getHost() + ":" + status.getPort();
+        System.out.println("[DIRECTORY] Узел подключен: " + key);
+        try {
+            String line;
+            while (status != null) {
+                update(key, status);
+                line = in.readLine();
+                status = line != null ? Message.fromJson(line) : null;
+            }
+        } finally {
+            nodes.remove(key);
+            System.out.println("[DIRECTORY] Узел отключен: " + key);
+        }
+    }
+
+    private void update(String key, Message status) {
+        NodeStatus node = nodes.computeIfAbsent(key, k -> new NodeStatus(status.getHost(), status.getPort()));
+        synchronized (this) {
+            node.players = status.getTotalPlayers();
+            node.capacity = status.getCapacity();
+            node.connections = status.getConnections();
+            node.gameStarted = status.isGameStarted();
+            node.draining = status.isDraining();
+            node.pendingJoins = 0;
+            node.lastSeen = System.nanoTime();
+        }
+    }
+
+    private void handleClient(Message request, OutputStream out) throws IOException {
+        NodeStatus node = chooseNode(request.isSpectator());
+        Message response;
+        if (node == null) {
+            response = new Message(MessageTypes.JOIN_REJECTED);
+            response.setReason("Нет свободных серверов, попробуйте позже");
+        } else {
+            response = new Message(MessageTypes.REDIRECT);
+            response.setHost(node.host);
+            response.setPort(node.port);
+            System.out.println("[DIRECTORY] " + (request.isSpectator() ? "Наблюдатель" : "Игрок") + " " +
+                    request.getPlayerName() + " -> " + node.host + ":" + node.port);
+        }
+        out.write((response.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private synchronized NodeStatus chooseNode(boolean spectator) {
+        long now = System.nanoTime();
+        NodeStatus best = null;
+        for (NodeStatus node : nodes.values()) {
+            if (node.draining || now - node.lastSeen > NODE_TIMEOUT * 1_000_000L) continue;
+
+            if (spectator) {
+                if (best == null || spectatorScore(node) > spectatorScore(best)) best = node;
+            } else if (!node.gameStarted && node.players + node.pendingJoins < node.capacity) {
+                if (best == null || isBetterForPlayer(node, best)) best = node;
+            }
+        }
+
+        // Учитываем направленного игрока до следующего отчета узла, чтобы волна подключений
+        // не ушла целиком на один узел
+        if (best != null && !spectator) {
+            best.pendingJoins++;
+        }
+        return best;
+    }
+
+    // Лобби с ожидающими игроками лучше пустого; при равенстве - меньше соединений на узле
+    private static boolean isBetterForPlayer(NodeStatus a, NodeStatus b) {
+        boolean aWaiting = a.players + a.pendingJoins > 0;
+        boolean bWaiting = b.players + b.pendingJoins > 0;
+        if (aWaiting != bWaiting) return aWaiting;
+        return a.connections + a.pendingJoins < b.connections + b.pendingJoins;
+    }
+
+    private static long spectatorScore(NodeStatus node) {
+        return (node.gameStarted ? 1_000_000L : 0) + node.players;
+    }
+
+    private static final class NodeStatus {
+        final String host;
+        final int port;
+        int players;
+        int capacity;
+        int connections;
+        int pendingJoins;
+        boolean gameStarted;
+        boolean draining;
+        long lastSeen;
+
+        NodeStatus(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+    }
+
+    public static void main(String[] args) {
+        new DirectoryServer().start();
+    }
+}
@@ -0,0 +1,236 @@
+package server.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Запись матча в компактный бинарный журнал (только дописывание).
+ * События накапливаются в буфере и сбрасываются в FileChannel при заполнении и в конце матча;
+ * событие больше буфера (итоги раунда в комнате на тысячи игроков) пишется в канал напрямую.
+ * Игроки внутри файла обозначаются номером слота (int), время - миллисекундами от начала записи.
+ * Ошибка записи отключает запись, но не влияет на игру.
+ */
+public class MatchRecorder {
+    public static final int MAGIC = 0x43525231; // "CRR1"
+    public static final short VERSION = 2;
+    public static final String FILE_SUFFIX = ".crr";
+
+    public static final byte EVENT_JOIN = 1;
+    public static final byte EVENT_LEAVE = 2;
+    public static final byte EVENT_MOVE = 3;
+    public static final byte EVENT_ROUND_START = 4;
+    public static final byte EVENT_ROUND_END = 5;
+    public static final byte EVENT_GAME_OVER = 6;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_STRING_BYTES = 1024;
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    // Для событий больше BUFFER_SIZE; растет по необходимости
+    private ByteBuffer large = ByteBuffer.allocate(0);
+    // Куда пишется текущее событие: buffer или large
+    private ByteBuffer out = buffer;
+    private final LongSupplier clock;
+    private final long startNanos;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private boolean closed = false;
+
+    private MatchRecorder(Path path, FileChannel channel, LongSupplier clock) {
+        this.path = path;
+        this.channel = channel;
+        this.clock = clock;
+        this.startNanos = clock.getAsLong();
+    }
+
+    /**
+     * Создает файл нового матча в каталоге directory и пишет заголовок.
+     */
+    public static MatchRecorder start(Path directory, int gridWidth, int gridHeight, LongSupplier clock) throws IOException {
+        Files.createDirectories(directory);
+        Path path = directory.resolve("match-" + LocalDateTime.now().format(FILE_TIME) + FILE_SUFFIX);
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        MatchRecorder recorder = new MatchRecorder(path, channel, clock);
+        recorder.buffer.putInt(MAGIC);
+        recorder.buffer.putShort(VERSION);
+        recorder.buffer.putInt(gridWidth);
+        recorder.buffer.putInt(gridHeight);
+        recorder.buffer.putLong(System.currentTimeMillis());
+        System.out.println("[REPLAY] Запись матча: " + path);
+        return recorder;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized void recordJoin(String playerId, String name, double x, double y) {
+        if (closed || slots.containsKey(playerId)) return;
+        int slot = slots.size();
+        slots.put(playerId, slot);
+
+        byte[] id = encode(playerId);
+        byte[] nameBytes = encode(name);
+        if (!begin(EVENT_JOIN, 4 + 4 + id.length + nameBytes.length + 16)) return;
+        out.putInt(slot);
+        putString(id);
+        putString(nameBytes);
+        out.putDouble(x);
+        out.putDouble(y);
+        end();
+    }
+
+    public synchronized void recordLeave(String playerId) {
+        Integer slot = slots.get(playerId);
+        if (closed || slot == null || !begin(EVENT_LEAVE, 4)) return;
+        out.putInt(slot);
+        end();
+    }
+
+    public synchronized void recordMove(String playerId, double x, double y) {
+        Integer slot = slots.get(playerId);
+        if (closed || slot == null || !begin(EVENT_MOVE, 4 + 16)) return;
+        out.putInt(slot);
+        out.putDouble(x);
+        out.putDouble(y);
+        end();
+    }
+
+    public synchronized void recordRoundStart(int round, byte targetColor, long fieldSeed, double duration) {
+        if (closed || !begin(EVENT_ROUND_START, 4 + 1 + 8 + 8)) return;
+        out.putInt(round);
+        out.put(targetColor);
+        out.putLong(fieldSeed);
+        out.putDouble(duration);
+        end();
+    }
+
+    /**
+     * Итог раунда: позиции, по которым проверялись живые игроки, и кто из них выбыл.
+     */
+    public synchronized void recordRoundEnd(int round, String[] playerIds, double[] xs, double[] ys,
+                                            boolean[] eliminated, int count) {
+        if (closed || !begin(EVENT_ROUND_END, 4 + 4 + count * (4 + 16 + 1))) return;
+        out.putInt(round);
+        out.putInt(count);
+        for (int i = 0; i < count; i++) {
+            Integer slot = slots.get(playerIds[i]);
+            out.putInt(slot != null ? slot : -1);
+            out.putDouble(xs[i]);
+            out.putDouble(ys[i]);
+            out.put((byte) (eliminated[i] ? 1 : 0));
+        }
+        end();
+    }
+
+    /**
+     * Конец матча; winnerId == null - ничья. Журнал сбрасывается на диск и закрывается.
+     */
+    public synchronized void recordGameOver(String winnerId, int round) {
+        if (closed) return;
+        Integer slot = winnerId != null ? slots.get(winnerId) : null;
+        if (begin(EVENT_GAME_OVER, 4 + 4)) {
+            out.putInt(slot != null ? slot : -1);
+            out.putInt(round);
+            end();
+        }
+        close();
+    }
+
+    public synchronized void close() {
+        if (closed) return;
+        try {
+            flush();
+            channel.force(false);
+        } catch (IOException e) {
+            System.err.println("[REPLAY][ERROR] Ошибка записи матча: " + e.getMessage());
+        } finally {
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Заголовок события: тип и время от начала записи; при нехватке места буфер сбрасывается.
+    // Событие, которое не помещается в буфер целиком, собирается в large и пишется в end()
+    private boolean begin(byte type, int payloadSize) {
+        int size = 1 + 4 + payloadSize;
+        try {
+            if (buffer.remaining() < size) {
+                flush();
+            }
+        } catch (IOException e) {
+            fail(type, e);
+            return false;
+        }
+        if (size > buffer.capacity()) {
+            if (large.capacity() < size) {
+                large = ByteBuffer.allocate(size);
+            }
+            large.clear();
+            out = large;
+        } else {
+            out = buffer;
+        }
+        out.put(type);
+        out.putInt((int) ((clock.getAsLong() - startNanos) / 1_000_000L));
+        return true;
+    }
+
+    private void end() {
+        if (out == buffer) return;
+        out = buffer;
+        try {
+            large.flip();
+            while (large.hasRemaining()) {
+                channel.write(large);
+            }
+        } catch (IOException e) {
+            fail(large.get(0), e);
+        }
+    }
+
+    // Событие потеряно: запись останавливается, файл остается целым до предыдущего события
+    private void fail(byte type, IOException e) {
+        System.err.println("[REPLAY][ERROR] Ошибка записи матча, событие " + type +
+                " потеряно, запись остановлена: " + e.getMessage());
+        buffer.clear();
+        out = buffer;
+        close();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void putString(byte[] bytes) {
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static byte[] encode(String value) {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= MAX_STRING_BYTES) return bytes;
+        return new String(bytes, 0, MAX_STRING_BYTES, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,264 @@
+package server.replay;
+
+import common.FieldGrid;
+import common.GameSettings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Безголовое воспроизведение записанных матчей без сокетов и таймеров, с максимальной скоростью.
+ * Поле каждого раунда заново строится из seed, ввод применяется к позициям игроков,
+ * итоги раундов пересчитываются по тому же правилу, что и в комнате (цвет клетки под игроком),
+ * и сверяются с записанными.
+ * <p>
+ * Запуск: java -cp ... server.replay.ReplayEngine replays/ [файлы...]
+ */
+public class ReplayEngine {
+
+    public static class Result {
+        public final Path path;
+        public int players;
+        public int rounds;
+        public int events;
+        public long recordedMillis;
+        public long replayNanos;
+        public String winner;
+        public final List<String> mismatches = new ArrayList<>();
+
+        Result(Path path) {
+            this.path = path;
+        }
+
+        public boolean isConsistent() {
+            return mismatches.isEmpty();
+        }
+
+        // Во сколько раз воспроизведение быстрее реального времени матча
+        public double speedup() {
+            return replayNanos > 0 ? recordedMillis * 1_000_000.0 / replayNanos : 0;
+        }
+    }
+
+    // Состояние игроков по слотам записи
+    private String[] names = new String[16];
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private boolean[] present = new boolean[16];
+    private boolean[] alive = new boolean[16];
+    private FieldGrid field;
+
+    public Result replay(Path path) throws IOException {
+        Result result = new Result(path);
+        long started = System.nanoTime();
+
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (in.remaining() < 22 || in.getInt() != MatchRecorder.MAGIC) {
+            throw new IOException("Не файл записи матча: " + path);
+        }
+        short version = in.getShort();
+        if (version != MatchRecorder.VERSION) {
+            throw new IOException("Неподдерживаемая версия записи " + version + ": " + path);
+        }
+        int gridWidth = in.getInt();
+        int gridHeight = in.getInt();
+        in.getLong(); // время начала матча
+
+        if (field == null || field.getWidth() != gridWidth || field.getHeight() != gridHeight) {
+            field = new FieldGrid(gridWidth, gridHeight);
+        }
+        Arrays.fill(present, false);
+        Arrays.fill(alive, false);
+
+        int round = 0;
+        byte targetColor = GameSettings.NO_COLOR;
+        boolean gameOver = false;
+
+        // Оборванная запись (сервер упал) воспроизводится до последнего целого события
+        try {
+            while (in.hasRemaining() && !gameOver) {
+                byte type = in.get();
+                result.recordedMillis = Integer.toUnsignedLong(in.getInt());
+                result.events++;
+
+                switch (type) {
+                    case MatchRecorder.EVENT_JOIN -> {
+                        int slot = in.getInt();
+                        ensureCapacity(slot);
+                        getString(in); // id игрока
+                        names[slot] = getString(in);
+                        xs[slot] = in.getDouble();
+                        ys[slot] = in.getDouble();
+                        present[slot] = true;
+                        alive[slot] = true;
+                        result.players++;
+                    }
+                    case MatchRecorder.EVENT_LEAVE -> {
+                        int slot = in.getInt();
+                        present[slot] = false;
+                        alive[slot] = false;
+                    }
+                    case MatchRecorder.EVENT_MOVE -> {
+                        int slot = in.getInt();
+                        double x = in.getDouble();
+                        double y = in.getDouble();
+                        if (present[slot] && alive[slot]) {
+                            xs[slot] = x;
+                            ys[slot] = y;
+                        }
+                    }
+                    case MatchRecorder.EVENT_ROUND_START -> {
+                        round = in.getInt();
+                        targetColor = in.get();
+                        long seed = in.getLong();
+                        in.getDouble(); // длительность
+                        field.generate(seed);
+                        result.rounds++;
+                    }
+                    case MatchRecorder.EVENT_ROUND_END -> resolveRound(in, round, targetColor, result);
+                    case MatchRecorder.EVENT_GAME_OVER -> {
+                        int slot = in.getInt();
+                        in.getInt();
+                        checkWinner(slot, result);
+                        gameOver = true;
+                    }
+                    default -> throw new IOException("Неизвестное событие " + type + " в " + path);
+                }
+            }
+        } catch (java.nio.BufferUnderflowException e) {
+            result.mismatches.add("запись оборвана после события " + result.events);
+        }
+        if (!gameOver && result.mismatches.isEmpty()) {
+            result.mismatches.add("нет события конца матча");
+        }
+
+        result.replayNanos = System.nanoTime() - started;
+        return result;
+    }
+
+    private void resolveRound(ByteBuffer in, int round, byte targetColor, Result result) {
+        int recordedRound = in.getInt();
+        if (recordedRound != round) {
+            result.mismatches.add("итоги раунда " + recordedRound + " во время раунда " + round);
+        }
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            int slot = in.getInt();
+            double x = in.getDouble();
+            double y = in.getDouble();
+            boolean eliminated = in.get() != 0;
+            if (slot < 0 || slot >= present.length || !present[slot]) {
+                result.mismatches.add("раунд " + round + ": неизвестный игрок в итогах (слот " + slot + ")");
+                continue;
+            }
+
+            // Позиция, восстановленная из ввода, должна совпасть с той, по которой судила комната
+            if (xs[slot] != x || ys[slot] != y) {
+                result.mismatches.add("раунд " + round + ": позиция " + names[slot] + " по вводу (" +
+                        xs[slot] + ", " + ys[slot] + "), в итогах (" + x + ", " + y + ")");
+                xs[slot] = x;
+                ys[slot] = y;
+            }
+
+            boolean expected = field.colorAt(x, y) != targetColor;
+            if (expected != eliminated) {
+                result.mismatches.add("раунд " + round + ": " + names[slot] +
+                        (expected ? " должен был выбыть" : " должен был выжить"));
+            }
+            if (eliminated) {
+                alive[slot] = false;
+            }
+        }
+    }
+
+    private void checkWinner(int slot, Result result) {
+        int aliveCount = 0;
+        for (int i = 0; i < alive.length; i++) {
+            if (present[i] && alive[i]) aliveCount++;
+        }
+        if (slot < 0) {
+            result.winner = null;
+            return;
+        }
+        result.winner = slot < names.length ? names[slot] : null;
+        if (slot >= alive.length || !alive[slot] || aliveCount != 1) {
+            result.mismatches.add("победитель " + result.winner + " не совпадает с единственным выжившим");
+        }
+    }
+
+    private void ensureCapacity(int slot) {
+        if (slot < names.length) return;
+        int size = Math.max(slot + 1, names.length * 2);
+        names = Arrays.copyOf(names, size);
+        xs = Arrays.copyOf(xs, size);
+        ys = Arrays.copyOf(ys, size);
+        present = Arrays.copyOf(present, size);
+        alive = Arrays.copyOf(alive, size);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String arg : args.length > 0 ? args : new String[]{"replays"}) {
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> list = Files.list(path)) {
+                    list.filter(p -> p.toString().endsWith(MatchRecorder.FILE_SUFFIX)).sorted().forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+
+        ReplayEngine engine = new ReplayEngine();
+        int failed = 0;
+        long recordedMillis = 0;
+        long replayNanos = 0;
+
+        for (Path file : files) {
+            try {
+                Result result = engine.replay(file);
+                recordedMillis += result.recordedMillis;
+                replayNanos += result.replayNanos;
+
+                System.out.println("[REPLAY] " + file.getFileName() + ": игроков " + result.players +
+                        ", раундов " + result.rounds + ", событий " + result.events +
+                        ", победитель " + (result.winner != null ? result.winner : "-") +
+                        String.format(", %.1f с за %.2f мс (x%.0f)", result.recordedMillis / 1000.0,
+                                result.replayNanos / 1_000_000.0, result.speedup()));
+                for (String mismatch : result.mismatches) {
+                    System.out.println("[REPLAY]   расхождение: " + mismatch);
+                }
+                if (!result.isConsistent()) failed++;
+            } catch (IOException e) {
+                System.err.println("[REPLAY][ERROR] " + e.getMessage());
+                failed++;
+            }
+        }
+
+        System.out.println("[REPLAY] Матчей: " + files.size() + ", с расхождениями: " + failed +
+                String.format(", всего %.1f с игры за %.2f мс", recordedMillis / 1000.0, replayNanos / 1_000_000.0));
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
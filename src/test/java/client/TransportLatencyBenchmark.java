@@ -0,0 +1,206 @@
+package client;
+
+import common.FrameCompression;
+import common.Message;
+import common.MessageTypes;
+import common.Player;
+import server.GameServer;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Задержка "ввод - экран" по TCP и через UDP-канал (DatagramLink): клиент шлет MOVE с позицией,
+ * в которой закодирован номер движения, и ждет снимок, где его игрок стоит на этом движении или
+ * более позднем. Потерянное движение покрывается следующим - так же, как на экране игрока.
+ * Сервер поднимается в том же процессе, игрок в комнате один, матч не начинается.
+ * <p>
+ * Потери задаются снаружи, на lo (например, tc qdisc add dev lo root netem loss 5%) - и TCP,
+ * и UDP теряют пакеты одинаково. Аргументы: [секунд на режим=30] [порт=5801]
+ */
+public class TransportLatencyBenchmark {
+    private static final long MOVE_INTERVAL = 50;
+    private static final int X_STEPS = 500;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 5801;
+
+        System.setProperty("colorrush.port", String.valueOf(port));
+        System.setProperty("colorrush.replayDir", "");
+        System.setProperty("colorrush.checkpointDir", "");
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        GameServer server = new GameServer();
+        Thread serverThread = new Thread(server::start, "bench-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(500);
+
+        out.println(String.format("[BENCH] %-4s %8s %8s %8s %8s %8s %8s %12s",
+                "", "движений", "p50, мс", "p90, мс", "p99, мс", "p99.9", "макс", "пауза снимков"));
+        for (boolean udp : new boolean[]{false, true}) {
+            out.println(run(port, udp, seconds, out));
+        }
+        server.stop();
+        System.exit(0);
+    }
+
+    private static String run(int port, boolean udp, int seconds, PrintStream report) throws Exception {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream tcp = socket.getOutputStream();
+
+            Message connect = new Message(MessageTypes.CONNECT);
+            connect.setPlayerName("bench");
+            connect.setCompression(FrameCompression.DEFLATE);
+            connect.setUdp(udp);
+            send(tcp, connect);
+
+            // Ответ на вход, затем UDP-рукопожатие (в режиме UDP)
+            Probe probe = new Probe(seconds * 1000 / MOVE_INTERVAL + 1);
+            FrameCompression compression = new FrameCompression();
+            DatagramLink link = null;
+            while (probe.playerId == null) {
+                Message message = Message.fromJson(compression.decode(in.readLine()));
+                if (!MessageTypes.CONNECT.equals(message.getType())) continue;
+                probe.playerId = message.getPlayerId();
+                if (udp && message.getUdpToken() != null) {
+                    link = DatagramLink.open("localhost", message.getUdpPort(), message.getUdpToken(),
+                            new MessageDispatcher(probe::onState, Runnable::run));
+                    link.start();
+                }
+            }
+            while (link != null && !link.isReady()) {
+                Thread.sleep(10);
+            }
+
+            // Движения - из своего потока с постоянным шагом; этот поток читает TCP
+            DatagramLink moves = link;
+            Thread sender = new Thread(() -> sendMoves(tcp, moves, probe, seconds), "bench-moves");
+            sender.start();
+            Thread reader = new Thread(() -> {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        Message message = Message.fromJson(compression.decode(line));
+                        if (MessageTypes.GAME_STATE.equals(message.getType())) {
+                            probe.onState(message);
+                        }
+                    }
+                } catch (Exception ignored) {
+                    // Сокет закрыт в конце прогона
+                }
+            }, "bench-reader");
+            reader.setDaemon(true);
+            reader.start();
+            sender.join();
+            // Последние движения успевают дойти
+            Thread.sleep(1000);
+
+            if (link != null) {
+                // Потери снимков и RTT по PING/PONG - отчетом самого канала
+                PrintStream quiet = System.out;
+                System.setOut(report);
+                link.report();
+                System.setOut(quiet);
+                link.close();
+            }
+            send(tcp, new Message(MessageTypes.DISCONNECT));
+            return probe.report(udp ? "UDP" : "TCP");
+        }
+    }
+
+    private static void sendMoves(OutputStream tcp, DatagramLink link, Probe probe, int seconds) {
+        long started = System.nanoTime();
+        long next = started;
+        try {
+            while (next - started < seconds * 1_000_000_000L) {
+                long delay = next - System.nanoTime();
+                if (delay > 0) {
+                    Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+                }
+                int seq = probe.nextMove(System.nanoTime());
+                double x = 100 + seq % X_STEPS;
+                double y = 100 + seq / X_STEPS;
+                if (link == null || !link.sendMove(x, y)) {
+                    Message move = new Message(MessageTypes.MOVE);
+                    move.setX(x);
+                    move.setY(y);
+                    send(tcp, move);
+                }
+                next += MOVE_INTERVAL * 1_000_000L;
+            }
+        } catch (Exception e) {
+            System.err.println("[BENCH][ERROR] " + e.getMessage());
+        }
+    }
+
+    private static void send(OutputStream out, Message message) throws Exception {
+        synchronized (out) {
+            out.write((message.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    // Снимки приходят из потока чтения TCP и из потока приема UDP
+    private static final class Probe {
+        volatile String playerId;
+        private final long[] sentAt;
+        private final long[] latency;
+        private int moves = 0;
+        private int seen = -1;
+        private int measured = 0;
+        private long lastState = 0;
+        private long maxGap = 0;
+
+        Probe(long capacity) {
+            sentAt = new long[(int) capacity + 16];
+            latency = new long[sentAt.length];
+        }
+
+        synchronized int nextMove(long now) {
+            sentAt[moves] = now;
+            return moves++;
+        }
+
+        synchronized void onState(Message state) {
+            long now = System.nanoTime();
+            if (moves == 0) return;
+            if (lastState > 0) {
+                maxGap = Math.max(maxGap, now - lastState);
+            }
+            lastState = now;
+            if (state.getPlayers() == null) return;
+            for (Player player : state.getPlayers()) {
+                if (!player.getId().equals(playerId) || player.getX() < 100) continue;
+                int seq = (int) (player.getX() - 100) + (int) (player.getY() - 100) * X_STEPS;
+                // Позиция появления в центре - не движение
+                if (seq >= moves) continue;
+                for (int i = seen + 1; i <= seq; i++) {
+                    latency[measured++] = now - sentAt[i];
+                }
+                seen = Math.max(seen, seq);
+            }
+        }
+
+        synchronized String report(String mode) {
+            long[] sorted = Arrays.copyOf(latency, measured);
+            Arrays.sort(sorted);
+            return String.format("[BENCH] %-4s %8d %8.1f %8.1f %8.1f %8.1f %8.1f %12.1f", mode, measured,
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                    percentile(sorted, 99.9), measured > 0 ? sorted[measured - 1] / 1e6 : 0.0, maxGap / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) return 0;
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * p / 100) - 1)] / 1e6;
+        }
+    }
+}
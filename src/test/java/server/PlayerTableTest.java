@@ -0,0 +1,80 @@
+package server;
+
+import common.FieldGrid;
+import common.GameSettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Итоги раунда в таблице игроков: параллельный подсчет (как при пороге 0) совпадает с последовательным.
+ * Слотов в таблице на несколько кусков JUDGE_CHUNK, среди них свободные и уже выбывшие.
+ */
+class PlayerTableTest {
+    private static final int SLOTS = 3 * 4096 + 123;
+
+    private PlayerTable table;
+
+    @BeforeEach
+    void setUp() {
+        FieldGrid field = new FieldGrid(200, 200);
+        field.generate(7);
+        table = new PlayerTable(field);
+
+        Random random = new Random(7);
+        synchronized (table) {
+            for (int i = 0; i < SLOTS; i++) {
+                table.add("Бот " + i, random.nextDouble() * field.getPixelWidth(),
+                        random.nextDouble() * field.getPixelHeight(), true, true);
+            }
+            for (int i = 0; i < SLOTS; i += 11) {
+                table.eliminate(i);
+            }
+            for (int i = 5; i < SLOTS; i += 97) {
+                table.remove(PlayerTable.idOf(i));
+            }
+        }
+    }
+
+    @Test
+    void parallelJudgeMatchesSequential() {
+        synchronized (table) {
+            int limit = table.limit();
+            for (byte color = 0; color < GameSettings.ROUND_COLORS.length; color++) {
+                boolean[] sequential = new boolean[limit];
+                boolean[] parallel = new boolean[limit];
+                // Буфер с мусором от прошлого раунда: подсчет перезаписывает каждый слот
+                Arrays.fill(parallel, true);
+
+                int expected = table.judge(color, sequential, false);
+                int actual = table.judge(color, parallel, true);
+
+                assertTrue(expected > 0, "цвет " + color + ": никто не выбыл");
+                assertEquals(expected, actual, "цвет " + color);
+                assertArrayEquals(sequential, parallel, "цвет " + color);
+            }
+        }
+    }
+
+    @Test
+    void judgeSkipsFreeAndEliminatedSlots() {
+        synchronized (table) {
+            boolean[] eliminated = new boolean[table.limit()];
+            int count = table.judge((byte) 0, eliminated, true);
+
+            int marked = 0;
+            for (int i = 0; i < eliminated.length; i++) {
+                if (!eliminated[i]) continue;
+                marked++;
+                assertTrue(table.isUsed(i) && table.isAlive(i), "слот " + i);
+            }
+            assertEquals(count, marked);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package server.replay;
+
+import common.FieldGrid;
+import common.GameSettings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Журнал матча в комнате на десятки тысяч игроков: итоги раунда больше буфера записи
+ * и номера слотов больше 32767 читаются ReplayEngine без потерь.
+ */
+class MatchRecorderTest {
+    private static final int PLAYERS = 40_000;
+    private static final int GRID = 200;
+    private static final long SEED = 11;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundEndLargerThanBufferIsReplayed() throws IOException {
+        FieldGrid field = new FieldGrid(GRID, GRID);
+        field.generate(SEED);
+        byte target = 2;
+
+        long[] now = {0};
+        MatchRecorder recorder = MatchRecorder.start(directory, GRID, GRID, () -> now[0]);
+
+        Random random = new Random(SEED);
+        String[] ids = new String[PLAYERS];
+        double[] xs = new double[PLAYERS];
+        double[] ys = new double[PLAYERS];
+        boolean[] eliminated = new boolean[PLAYERS];
+        int eliminatedCount = 0;
+        for (int i = 0; i < PLAYERS; i++) {
+            ids[i] = String.valueOf(i);
+            xs[i] = random.nextDouble() * field.getPixelWidth();
+            ys[i] = random.nextDouble() * field.getPixelHeight();
+            eliminated[i] = field.colorAt(xs[i], ys[i]) != target;
+            if (eliminated[i]) eliminatedCount++;
+            recorder.recordJoin(ids[i], "Бот " + i, xs[i], ys[i]);
+        }
+        now[0] = 1_000_000_000L;
+        recorder.recordRoundStart(1, target, SEED, GameSettings.INITIAL_ROUND_TIME);
+        now[0] = 2_000_000_000L;
+        recorder.recordRoundEnd(1, ids, xs, ys, eliminated, PLAYERS);
+        recorder.recordGameOver(null, 1);
+
+        ReplayEngine.Result result = new ReplayEngine().replay(recorder.getPath());
+
+        assertTrue(result.isConsistent(), () -> String.join("\n", result.mismatches));
+        assertTrue(eliminatedCount > 0 && eliminatedCount < PLAYERS);
+        assertEquals(PLAYERS, result.players);
+        assertEquals(1, result.rounds);
+        assertEquals(PLAYERS + 3, result.events);
+    }
+}
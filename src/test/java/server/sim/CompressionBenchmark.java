@@ -0,0 +1,157 @@
+package server.sim;
+
+import common.FrameCompression;
+import common.Message;
+import common.MessageTypes;
+import common.Player;
+import common.ScoreboardEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Сжатие кадров (FrameCompression): размер на проводе и время сжатия/разбора по типам сообщений,
+ * затем стоимость на одного игрока - снимки GAME_STATE с частотой рассылки комнаты (раз в 33 мс).
+ * Перед замером каждый кадр проверяется на точное восстановление JSON.
+ * <p>
+ * Аргументы: [игроков в GAME_STATE=40] [секунд на замер=1]
+ */
+public class CompressionBenchmark {
+    private static final int SNAPSHOTS_PER_SECOND = 30;
+
+    public static void main(String[] args) {
+        int visible = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        long measureNanos = (long) ((args.length > 1 ? Double.parseDouble(args[1]) : 1) * 1e9);
+
+        Map<String, Message> samples = samples(visible);
+        FrameCompression codec = new FrameCompression();
+        boolean ok = true;
+        for (Map.Entry<String, Message> sample : samples.entrySet()) {
+            String json = sample.getValue().toJson();
+            String frame = new String(codec.encode(json.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+            if (!json.equals(codec.decode(frame))) {
+                System.out.println("[BENCH] " + sample.getKey() + ": кадр не восстанавливается");
+                ok = false;
+            }
+        }
+
+        System.out.println("[BENCH] Сжатие кадров, порог " + FrameCompression.THRESHOLD + " байт, игроков в GAME_STATE: " + visible);
+        System.out.println(String.format("[BENCH] %-22s %8s %8s %7s %12s %12s",
+                "тип", "JSON", "кадр", "доля", "сжатие, мкс", "разбор, мкс"));
+        double stateJson = 0, stateFrame = 0, stateEncode = 0, stateDecode = 0;
+        for (Map.Entry<String, Message> sample : samples.entrySet()) {
+            byte[] json = sample.getValue().toJson().getBytes(StandardCharsets.UTF_8);
+            byte[] frame = codec.encode(json);
+            String frameLine = new String(frame, StandardCharsets.UTF_8);
+
+            double encodeMicros = measure(() -> codec.encode(json), measureNanos);
+            double decodeMicros = measure(() -> codec.decode(frameLine), measureNanos);
+            System.out.println(String.format("[BENCH] %-22s %8d %8d %6.0f%% %12.2f %12.2f",
+                    sample.getKey(), json.length, frame.length, 100.0 * frame.length / json.length,
+                    encodeMicros, decodeMicros));
+
+            if (sample.getKey().equals(MessageTypes.GAME_STATE)) {
+                stateJson = json.length;
+                stateFrame = frame.length;
+                stateEncode = encodeMicros;
+                stateDecode = decodeMicros;
+            }
+        }
+
+        // Снимки идут каждому игроку SNAPSHOTS_PER_SECOND раз в секунду, остальное - единицы в раунд
+        System.out.println(String.format("[BENCH] На игрока при %d снимках/с: трафик %.1f КБ/с без сжатия, %.1f КБ/с со сжатием; " +
+                        "CPU сервера %.2f мс/с, клиента %.2f мс/с",
+                SNAPSHOTS_PER_SECOND, stateJson * SNAPSHOTS_PER_SECOND / 1024, stateFrame * SNAPSHOTS_PER_SECOND / 1024,
+                stateEncode * SNAPSHOTS_PER_SECOND / 1000, stateDecode * SNAPSHOTS_PER_SECOND / 1000));
+
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    // Микросекунд на операцию; результат накапливается, чтобы JIT не выбросил вызов
+    private static double measure(Supplier<?> operation, long measureNanos) {
+        int sink = 0;
+        long warmupEnd = System.nanoTime() + measureNanos / 2;
+        while (System.nanoTime() < warmupEnd) {
+            sink += operation.get().hashCode();
+        }
+
+        long operations = 0;
+        long started = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 100; i++) {
+                sink += operation.get().hashCode();
+            }
+            operations += 100;
+            elapsed = System.nanoTime() - started;
+        } while (elapsed < measureNanos);
+
+        if (sink == 42) System.out.print("");
+        return elapsed / 1e3 / operations;
+    }
+
+    // Как в комнате: id - номера слотов, люди и боты вперемешку, координаты - после движения
+    private static Map<String, Message> samples(int visible) {
+        Random random = new Random(1);
+        Map<String, Message> samples = new LinkedHashMap<>();
+
+        Message state = new Message(MessageTypes.GAME_STATE);
+        state.setRound(7);
+        state.setTargetColor((byte) 3);
+        state.setTimeLeft(2.35);
+        state.setDuration(4.5);
+        state.setGameStarted(true);
+        state.setIsRoundActive(true);
+        List<Player> players = new ArrayList<>(visible);
+        for (int i = 0; i < visible; i++) {
+            int id = random.nextInt(visible * 4);
+            Player player = new Player(String.valueOf(id), (i % 3 == 0 ? "Игрок " : "Бот ") + id);
+            player.setX(random.nextDouble() * 2400);
+            player.setY(random.nextDouble() * 1800);
+            player.setAlive(random.nextInt(4) != 0);
+            players.add(player);
+        }
+        state.setPlayers(players);
+        state.setTotalPlayers(visible * 3);
+        state.setAlivePlayers(visible * 2);
+        state.setGridWidth(60);
+        state.setGridHeight(60);
+        state.setFieldSeed(random.nextLong());
+        samples.put(MessageTypes.GAME_STATE, state);
+
+        List<ScoreboardEntry> scores = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            scores.add(new ScoreboardEntry("Игрок " + random.nextInt(1000), 10 - i));
+        }
+        Message eliminated = new Message(MessageTypes.PLAYER_ELIMINATED);
+        eliminated.setWinner("Вы проиграли!");
+        eliminated.setScores(scores);
+        samples.put(MessageTypes.PLAYER_ELIMINATED, eliminated);
+
+        Message gameOver = new Message(MessageTypes.GAME_OVER);
+        gameOver.setWinner("Игрок 17");
+        gameOver.setScores(scores);
+        samples.put(MessageTypes.GAME_OVER, gameOver);
+
+        Message roundStart = new Message(MessageTypes.ROUND_START);
+        roundStart.setTargetColor((byte) 2);
+        roundStart.setDuration(4.5);
+        roundStart.setGridWidth(60);
+        roundStart.setGridHeight(60);
+        roundStart.setFieldSeed(random.nextLong());
+        samples.put(MessageTypes.ROUND_START, roundStart);
+
+        Message move = new Message(MessageTypes.MOVE);
+        move.setX(412.5);
+        move.setY(233.25);
+        samples.put(MessageTypes.MOVE, move);
+        return samples;
+    }
+}
@@ -0,0 +1,33 @@
+package server.sim;
+
+import common.ScoreboardEntry;
+import server.db.Scoreboard;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Таблица рекордов в памяти для симуляции: без SQLite и без фонового потока.
+ */
+public class InMemoryScoreboard implements Scoreboard {
+    private final Map<String, Integer> scores = new HashMap<>();
+
+    @Override
+    public synchronized void updateIfBetter(String playerName, int newScore) {
+        scores.merge(playerName, newScore, Math::max);
+    }
+
+    @Override
+    public synchronized List<ScoreboardEntry> getTop(int limit) {
+        List<ScoreboardEntry> top = new ArrayList<>();
+        scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey(Comparator.naturalOrder())))
+                .limit(limit)
+                .forEach(e -> top.add(new ScoreboardEntry(e.getKey(), e.getValue())));
+        return top;
+    }
+}
@@ -0,0 +1,132 @@
+package server.sim;
+
+import common.GameSettings;
+import common.Player;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import server.GameRoom;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сессии игроков: обрыв соединения, возврат по токену в пределах RECONNECT_GRACE_PERIOD и удаление
+ * по истечении срока, восстановление из снимка. В комнате один игрок, поэтому матч не начинается
+ * и не мешает проверкам; проверка снимка добавляет второго и дожидается начала матча.
+ */
+class RoomSessionTest {
+    private VirtualScheduler scheduler;
+    private GameRoom room;
+    private SimClient client;
+    private String playerId;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new VirtualScheduler();
+        room = new GameRoom(new InMemoryScoreboard(), scheduler, 40, 30, new Random(1));
+        client = new SimClient(scheduler::nanoTime);
+        room.registerClient(client);
+        playerId = room.addPlayer("Игрок", client).getId();
+        client.setPlayerId(playerId);
+    }
+
+    @Test
+    void resumeWithinGracePeriodKeepsPlayer() {
+        String token = room.openSession(playerId);
+        room.detachPlayer(playerId, client);
+        scheduler.advance(GameSettings.RECONNECT_GRACE_PERIOD - 1000, TimeUnit.MILLISECONDS);
+
+        SimClient reconnected = new SimClient(scheduler::nanoTime);
+        Player player = room.resumePlayer(token, reconnected);
+        assertNotNull(player);
+        assertEquals(playerId, player.getId());
+
+        // Срок ожидания отменен: игрок остается и после него
+        scheduler.advance(2L * GameSettings.RECONNECT_GRACE_PERIOD, TimeUnit.MILLISECONDS);
+        assertEquals(1, room.getPlayerCount());
+        assertEquals(0, scheduler.getErrors());
+    }
+
+    @Test
+    void expiredSessionRemovesPlayer() {
+        String token = room.openSession(playerId);
+        room.detachPlayer(playerId, client);
+        scheduler.advance(GameSettings.RECONNECT_GRACE_PERIOD + 1, TimeUnit.MILLISECONDS);
+
+        assertEquals(0, room.getPlayerCount());
+        assertNull(room.resumePlayer(token, new SimClient(scheduler::nanoTime)));
+    }
+
+    @Test
+    void detachWithoutSessionRemovesPlayerAtOnce() {
+        room.detachPlayer(playerId, client);
+
+        assertEquals(0, room.getPlayerCount());
+    }
+
+    @Test
+    void resumeReleasesPreviousConnection() {
+        String token = room.openSession(playerId);
+        SimClient reconnected = new SimClient(scheduler::nanoTime);
+
+        assertNotNull(room.resumePlayer(token, reconnected));
+        assertTrue(client.isReleased());
+        assertFalse(reconnected.isReleased());
+        assertEquals(1, room.getPlayerCount());
+    }
+
+    @Test
+    void staleConnectionCannotTouchPlayerInReusedSlot() {
+        room.removePlayer(playerId);
+        assertNull(client.getPlayerId());
+
+        SimClient newcomer = new SimClient(scheduler::nanoTime);
+        room.registerClient(newcomer);
+        String newcomerId = room.addPlayer("Новичок", newcomer).getId();
+        newcomer.setPlayerId(newcomerId);
+        room.openSession(newcomerId);
+        assertEquals(playerId, newcomerId, "слот должен переиспользоваться");
+
+        // Старое соединение помнит тот же id: ни выход, ни обрыв не затрагивают нового игрока
+        room.removePlayer(playerId, client);
+        room.detachPlayer(playerId, client);
+        scheduler.advance(GameSettings.RECONNECT_GRACE_PERIOD + 1, TimeUnit.MILLISECONDS);
+        assertEquals(1, room.getPlayerCount());
+
+        room.detachPlayer(newcomerId, newcomer);
+        scheduler.advance(GameSettings.RECONNECT_GRACE_PERIOD + 1, TimeUnit.MILLISECONDS);
+        assertEquals(0, room.getPlayerCount());
+    }
+
+    @Test
+    void checkpointRestoresPlayersForTheirTokens() {
+        String token = room.openSession(playerId);
+        SimClient second = new SimClient(scheduler::nanoTime);
+        room.registerClient(second);
+        String secondId = room.addPlayer("Второй", second).getId();
+        second.setPlayerId(secondId);
+        room.openSession(secondId);
+        assertTrue(scheduler.runUntil(room::isGameStarted, 60, TimeUnit.SECONDS));
+
+        ByteBuffer checkpoint = ByteBuffer.allocate(64 * 1024);
+        assertTrue(room.writeCheckpoint(checkpoint));
+        checkpoint.flip();
+
+        VirtualScheduler restartedScheduler = new VirtualScheduler();
+        GameRoom restarted = new GameRoom(new InMemoryScoreboard(), restartedScheduler, 40, 30, new Random(2));
+        assertTrue(restarted.restoreCheckpoint(checkpoint));
+        assertFalse(checkpoint.hasRemaining());
+        assertEquals(2, restarted.getPlayerCount());
+
+        Player player = restarted.resumePlayer(token, new SimClient(restartedScheduler::nanoTime));
+        assertNotNull(player);
+        assertEquals("Игрок", player.getName());
+    }
+}
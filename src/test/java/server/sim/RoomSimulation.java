@@ -0,0 +1,268 @@
+package server.sim;
+
+import common.GameSettings;
+import common.Message;
+import common.MessageTypes;
+import server.GameRoom;
+import server.Scheduler;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Детерминированная симуляция комнаты: виртуальное время, RNG с seed, клиенты в памяти.
+ * Целый матч с сотнями игроков проходит за доли секунды. После матча проверяются сроки раундов,
+ * выбывания и число рассылок, а повторный прогон с тем же seed должен дать те же события.
+ * <p>
+ * Проверки прогона - в RoomSimulationTest. Ручной прогон с замером (после mvn test-compile):
+ * java -cp target/classes:target/test-classes:... server.sim.RoomSimulation [игроков=200] [ботов=0] [seed=1] [-v]
+ * (-v - не скрывать журнал комнаты). Код выхода 1 - найдены нарушения.
+ */
+public class RoomSimulation {
+    // Игроки-клиенты случайно блуждают: шаг раз в MOVE_INTERVAL мс
+    private static final long MOVE_INTERVAL = 50;
+    private static final double MOVE_STEP = GameSettings.MOVE_SPEED * 3;
+    private static final long ROUND_TICK = 100;
+    private static final long LOBBY_LIMIT = 60;
+    private static final long MATCH_LIMIT = 4 * 3600;
+
+    public static class Result {
+        public final long seed;
+        public int players;
+        public int bots;
+        public int rounds;
+        public String winner;
+        public long virtualNanos;
+        public long wallNanos;
+        public long tasks;
+        public long snapshotPlayers;
+        public long digest;
+        public final Map<String, Long> messages = new TreeMap<>();
+        public final List<String> failures = new ArrayList<>();
+
+        Result(long seed) {
+            this.seed = seed;
+        }
+
+        public boolean isConsistent() {
+            return failures.isEmpty();
+        }
+    }
+
+    // Каталог для записи матчей; null - без записи
+    private Path replayDirectory;
+
+    public void setReplayDirectory(Path replayDirectory) {
+        this.replayDirectory = replayDirectory;
+    }
+
+    public Result run(long seed, int playerCount, int botCount, int gridWidth, int gridHeight) {
+        Result result = new Result(seed);
+        result.players = playerCount;
+        result.bots = botCount;
+        long started = System.nanoTime();
+
+        VirtualScheduler scheduler = new VirtualScheduler();
+        GameRoom room = new GameRoom(new InMemoryScoreboard(), scheduler, gridWidth, gridHeight, new Random(seed));
+        room.setReplayDirectory(replayDirectory);
+
+        List<SimClient> clients = new ArrayList<>(playerCount);
+        double[] xs = new double[playerCount];
+        double[] ys = new double[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            SimClient client = new SimClient(scheduler::nanoTime);
+            clients.add(client);
+            room.registerClient(client);
+            client.setPlayerId(room.addPlayer("Игрок " + i, client).getId());
+            xs[i] = gridWidth * GameSettings.CELL_SIZE / 2.0;
+            ys[i] = gridHeight * GameSettings.CELL_SIZE / 2.0;
+        }
+        room.addBots(botCount);
+
+        // Ввод клиентов - случайное блуждание из отдельного RNG с производным seed
+        Random input = new Random(seed * 31 + 17);
+        double maxX = gridWidth * GameSettings.CELL_SIZE - 10;
+        double maxY = gridHeight * GameSettings.CELL_SIZE - 10;
+        Scheduler.Timeout mover = scheduler.scheduleAtFixedRate(() -> {
+            if (!room.isGameStarted()) return;
+            for (int i = 0; i < playerCount; i++) {
+                xs[i] = Math.max(10, Math.min(maxX, xs[i] + (input.nextDouble() * 2 - 1) * MOVE_STEP));
+                ys[i] = Math.max(10, Math.min(maxY, ys[i] + (input.nextDouble() * 2 - 1) * MOVE_STEP));
+                room.handlePlayerMove(clients.get(i).getPlayerId(), clients.get(i), xs[i], ys[i]);
+            }
+        }, MOVE_INTERVAL, MOVE_INTERVAL, TimeUnit.MILLISECONDS);
+
+        if (!scheduler.runUntil(room::isGameStarted, LOBBY_LIMIT, TimeUnit.SECONDS)) {
+            result.failures.add("матч не начался за " + LOBBY_LIMIT + " с");
+        } else if (!scheduler.runUntil(() -> !room.isGameStarted(), MATCH_LIMIT, TimeUnit.SECONDS)) {
+            result.failures.add("матч не закончился за " + MATCH_LIMIT + " с");
+        }
+        mover.cancel();
+
+        result.virtualNanos = scheduler.nanoTime();
+        result.tasks = scheduler.getExecuted();
+        result.wallNanos = System.nanoTime() - started;
+        if (scheduler.getErrors() > 0) {
+            result.failures.add("ошибок в задачах: " + scheduler.getErrors());
+        }
+        if (!clients.isEmpty()) {
+            check(clients, result);
+        }
+        return result;
+    }
+
+    private void check(List<SimClient> clients, Result result) {
+        CRC32 digest = new CRC32();
+        for (SimClient client : clients) {
+            for (String type : new String[]{MessageTypes.GAME_STATE, MessageTypes.MATCH_START,
+                    MessageTypes.ROUND_START, MessageTypes.PLAYER_ELIMINATED, MessageTypes.GAME_OVER}) {
+                result.messages.merge(type, (long) client.count(type), Long::sum);
+            }
+            result.snapshotPlayers += client.getSnapshotPlayers();
+            digest.update((int) client.digest());
+        }
+        result.digest = digest.getValue();
+
+        // Расписание матча по первому клиенту: начала раундов и их длительности
+        List<Long> roundStarts = new ArrayList<>();
+        List<Double> durations = new ArrayList<>();
+        long gameOverTime = -1;
+        for (SimClient.Event event : clients.get(0).events()) {
+            String type = event.message.getType();
+            if (MessageTypes.MATCH_START.equals(type) || MessageTypes.ROUND_START.equals(type)) {
+                roundStarts.add(event.time);
+                durations.add(event.message.getDuration());
+            } else if (MessageTypes.GAME_OVER.equals(type)) {
+                gameOverTime = event.time;
+                result.winner = event.message.getWinner();
+            }
+        }
+        result.rounds = roundStarts.size();
+
+        // Раунд длится ровно duration, затем перерыв ROUND_BREAK до следующего раунда или конца матча
+        Set<Long> roundEnds = new HashSet<>();
+        long expectedTicks = 0;
+        for (int i = 0; i < roundStarts.size(); i++) {
+            long duration = (long) (durations.get(i) * 1_000_000_000L);
+            long end = roundStarts.get(i) + duration;
+            roundEnds.add(end);
+            expectedTicks += duration / TimeUnit.MILLISECONDS.toNanos(ROUND_TICK);
+
+            long next = i + 1 < roundStarts.size() ? roundStarts.get(i + 1) : gameOverTime;
+            long expected = end + TimeUnit.MILLISECONDS.toNanos(GameRoom.ROUND_BREAK);
+            if (next != expected) {
+                result.failures.add("раунд " + (i + 1) + ": следующее событие через " +
+                        (next - roundStarts.get(i)) / 1_000_000 + " мс вместо " +
+                        (expected - roundStarts.get(i)) / 1_000_000);
+            }
+        }
+
+        int eliminated = 0;
+        for (SimClient client : clients) {
+            String id = client.getPlayerId();
+            if (client.count(MessageTypes.MATCH_START) != 1 || client.count(MessageTypes.GAME_OVER) != 1) {
+                result.failures.add(id + ": MATCH_START " + client.count(MessageTypes.MATCH_START) +
+                        ", GAME_OVER " + client.count(MessageTypes.GAME_OVER));
+            }
+            if (client.count(MessageTypes.ROUND_START) != result.rounds - 1) {
+                result.failures.add(id + ": ROUND_START " + client.count(MessageTypes.ROUND_START) +
+                        " при " + result.rounds + " раундах");
+            }
+            if (client.count(MessageTypes.GAME_STATE) < expectedTicks) {
+                result.failures.add(id + ": GAME_STATE " + client.count(MessageTypes.GAME_STATE) +
+                        ", ожидалось не меньше " + expectedTicks);
+            }
+
+            int eliminations = client.count(MessageTypes.PLAYER_ELIMINATED);
+            eliminated += eliminations;
+            if (eliminations > 1) {
+                result.failures.add(id + ": PLAYER_ELIMINATED " + eliminations + " раз");
+            }
+            for (SimClient.Event event : client.events()) {
+                if (MessageTypes.PLAYER_ELIMINATED.equals(event.message.getType()) && !roundEnds.contains(event.time)) {
+                    result.failures.add(id + ": выбывание не в конце раунда (" + event.time / 1_000_000 + " мс)");
+                }
+            }
+        }
+
+        // Каждый человек, кроме победителя, выбывает ровно один раз
+        boolean humanWinner = result.winner != null && result.winner.startsWith("Игрок ");
+        int expectedEliminated = clients.size() - (humanWinner ? 1 : 0);
+        if (eliminated != expectedEliminated) {
+            result.failures.add("выбываний " + eliminated + ", ожидалось " + expectedEliminated);
+        }
+    }
+
+    // -1, если JVM не считает аллокации по потокам
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) {
+        List<String> positional = new ArrayList<>();
+        boolean verbose = false;
+        for (String arg : args) {
+            if ("-v".equals(arg)) verbose = true;
+            else positional.add(arg);
+        }
+        int players = positional.size() > 0 ? Integer.parseInt(positional.get(0)) : 200;
+        int bots = positional.size() > 1 ? Integer.parseInt(positional.get(1)) : 0;
+        long seed = positional.size() > 2 ? Long.parseLong(positional.get(2)) : 1;
+        int gridWidth = Integer.getInteger("colorrush.gridWidth", GameSettings.GRID_W);
+        int gridHeight = Integer.getInteger("colorrush.gridHeight", GameSettings.GRID_H);
+
+        PrintStream out = System.out;
+        RoomSimulation simulation = new RoomSimulation();
+        Result first;
+        Result second;
+        if (!verbose) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+        // Прогон идет в одном потоке (виртуальное время), поэтому аллокации потока - это аллокации комнаты
+        long allocated;
+        try {
+            long allocatedBefore = allocatedBytes();
+            first = simulation.run(seed, players, bots, gridWidth, gridHeight);
+            allocated = allocatedBytes() - allocatedBefore;
+            second = simulation.run(seed, players, bots, gridWidth, gridHeight);
+        } finally {
+            System.setOut(out);
+        }
+
+        if (first.digest != second.digest || first.rounds != second.rounds) {
+            first.failures.add("повторный прогон с seed " + seed + " дал другие события");
+        }
+
+        out.println("[SIM] Игроков " + players + ", ботов " + bots + ", seed " + seed +
+                ": раундов " + first.rounds + ", победитель " + (first.winner != null ? first.winner : "-") +
+                String.format(", %.1f с игры за %.0f мс (x%.0f), задач %d", first.virtualNanos / 1e9,
+                        first.wallNanos / 1e6, first.virtualNanos / (double) first.wallNanos, first.tasks));
+        out.println("[SIM] Сообщений: " + first.messages + ", записей игроков в снимках: " + first.snapshotPlayers);
+        long states = first.messages.getOrDefault(MessageTypes.GAME_STATE, 0L);
+        if (allocated >= 0 && states > 0) {
+            out.println(String.format("[SIM] Выделено памяти: %.1f МБ, %.0f байт на снимок GAME_STATE",
+                    allocated / 1e6, allocated / (double) states));
+        }
+        for (String failure : first.failures) {
+            out.println("[SIM]   нарушение: " + failure);
+        }
+        if (!first.isConsistent()) {
+            System.exit(1);
+        }
+    }
+}
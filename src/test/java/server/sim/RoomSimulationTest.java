@@ -0,0 +1,91 @@
+package server.sim;
+
+import common.GameSettings;
+import common.MessageTypes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import server.replay.MatchRecorder;
+import server.replay.ReplayEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Целые матчи на виртуальном времени (RoomSimulation): сроки раундов, выбывания, рассылки
+ * и воспроизводимость по seed.
+ */
+class RoomSimulationTest {
+    private final RoomSimulation simulation = new RoomSimulation();
+
+    @Test
+    void humansOnlyMatchFollowsRoundSchedule() {
+        RoomSimulation.Result result = simulation.run(1, 50, 0, GameSettings.GRID_W, GameSettings.GRID_H);
+
+        assertTrue(result.isConsistent(), () -> String.join("\n", result.failures));
+        assertTrue(result.rounds >= 1, "ни одного раунда");
+        assertEquals(50L, result.messages.get(MessageTypes.MATCH_START));
+        assertEquals(50L, result.messages.get(MessageTypes.GAME_OVER));
+        // Каждый, кроме победителя-человека, выбывает ровно один раз (проверяется и в прогоне)
+        long eliminated = result.messages.get(MessageTypes.PLAYER_ELIMINATED);
+        assertEquals(result.winner != null && result.winner.startsWith("Игрок ") ? 49L : 50L, eliminated);
+    }
+
+    @Test
+    void botsPlayMatchToWinner() {
+        RoomSimulation.Result result = simulation.run(2, 20, 30, GameSettings.GRID_W, GameSettings.GRID_H);
+
+        assertTrue(result.isConsistent(), () -> String.join("\n", result.failures));
+        assertNotNull(result.winner, "матч с ботами закончился без победителя");
+        assertTrue(result.rounds > 1, "раундов: " + result.rounds);
+    }
+
+    @Test
+    void largeWorldMatchIsConsistent() {
+        RoomSimulation.Result result = simulation.run(3, 10, 50, 300, 300);
+
+        assertTrue(result.isConsistent(), () -> String.join("\n", result.failures));
+        assertNotNull(result.winner);
+    }
+
+    @Test
+    void sameSeedGivesSameEvents() {
+        RoomSimulation.Result first = simulation.run(4, 30, 10, GameSettings.GRID_W, GameSettings.GRID_H);
+        RoomSimulation.Result second = simulation.run(4, 30, 10, GameSettings.GRID_W, GameSettings.GRID_H);
+
+        assertEquals(first.rounds, second.rounds);
+        assertEquals(first.winner, second.winner);
+        assertEquals(first.digest, second.digest);
+        assertEquals(first.messages, second.messages);
+    }
+
+    @Test
+    void recordedMatchReplaysConsistently(@TempDir Path replays) throws IOException {
+        simulation.setReplayDirectory(replays);
+        RoomSimulation.Result match = simulation.run(5, 20, 30, GameSettings.GRID_W, GameSettings.GRID_H);
+        assertTrue(match.isConsistent(), () -> String.join("\n", match.failures));
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(replays)) {
+            files = list.filter(p -> p.toString().endsWith(MatchRecorder.FILE_SUFFIX)).toList();
+        }
+        assertEquals(1, files.size());
+
+        ReplayEngine.Result replay = new ReplayEngine().replay(files.get(0));
+        assertTrue(replay.isConsistent(), () -> String.join("\n", replay.mismatches));
+        assertEquals(50, replay.players);
+        assertEquals(match.rounds, replay.rounds);
+        if (match.winner == null) {
+            assertNull(replay.winner);
+        } else {
+            assertTrue(match.winner.contains(replay.winner), match.winner + " / " + replay.winner);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package server.sim;
+
+import server.GameRoom;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Задержка подсчета итогов раунда в зависимости от размера комнаты: последовательный проход
+ * против параллельного сравнения цветов (GameRoom.PARALLEL_JUDGE_THRESHOLD), плюс время
+ * уведомлений выбывшим. Комната - как в RoomSimulation: виртуальное время, боты и клиенты в памяти;
+ * клиенты стоят в центре, поэтому часть из них выбывает в первом раунде. Меряется первый раунд
+ * каждого прогона, в таблице - медиана.
+ * <p>
+ * Аргументы: [размеры комнат=10,100,1000,10000] [прогонов=5]
+ */
+public class RoundBenchmark {
+    private static final int MAX_CLIENTS = 20;
+    private static final int WARMUP = 2;
+    private static final long ROUND_LIMIT = 120;
+
+    public static void main(String[] args) {
+        int[] sizes = Arrays.stream((args.length > 0 ? args[0] : "10,100,1000,10000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        System.out.println("[BENCH] Итоги раунда, прогонов на размер: " + repeats +
+                ", потоков пула: " + Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format("[BENCH] %8s %8s %14s %14s %7s %16s",
+                "игроков", "клиентов", "послед., мс", "паралл., мс", "x", "уведомления, мс"));
+        for (int size : sizes) {
+            int clients = Math.max(1, Math.min(size / 10, MAX_CLIENTS));
+            long[] sequential = new long[repeats];
+            long[] parallel = new long[repeats];
+            long[] notify = new long[repeats];
+            for (int i = -WARMUP; i < repeats; i++) {
+                long[] seq = firstRound(size, clients, i, Integer.MAX_VALUE);
+                long[] par = firstRound(size, clients, i, 0);
+                if (i < 0) continue;
+                sequential[i] = seq[0];
+                parallel[i] = par[0];
+                notify[i] = par[1];
+            }
+            double seqMs = median(sequential) / 1e6;
+            double parMs = median(parallel) / 1e6;
+            System.out.println(String.format("[BENCH] %8d %8d %14.3f %14.3f %7.2f %16.3f",
+                    size, clients, seqMs, parMs, seqMs / parMs, median(notify) / 1e6));
+        }
+    }
+
+    // Подсчет и уведомления первого раунда, нс; threshold 0 - всегда параллельно
+    private static long[] firstRound(int size, int clientCount, long seed, int threshold) {
+        VirtualScheduler scheduler = new VirtualScheduler();
+        GameRoom room = new GameRoom(new InMemoryScoreboard(), scheduler, 60, 60, new Random(seed));
+        room.setParallelJudgeThreshold(threshold);
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            List<SimClient> clients = new ArrayList<>(clientCount);
+            for (int i = 0; i < clientCount; i++) {
+                SimClient client = new SimClient(scheduler::nanoTime);
+                clients.add(client);
+                room.registerClient(client);
+                client.setPlayerId(room.addPlayer("Игрок " + i, client).getId());
+            }
+            room.addBots(size - clientCount);
+            if (!scheduler.runUntil(() -> room.getLastResolveNanos() > 0, ROUND_LIMIT, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("первый раунд не закончился за " + ROUND_LIMIT + " с");
+            }
+        } finally {
+            System.setOut(out);
+        }
+        return new long[]{room.getLastResolveNanos(), room.getLastNotifyNanos()};
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,167 @@
+package server.sim;
+
+import com.google.gson.Gson;
+import common.Message;
+import common.MessageTypes;
+import common.Player;
+import common.ScoreboardEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Сравнение сериализации сообщений: потоковый адаптер Message.toJson() против рефлексивного
+ * new Gson().toJson(), которым сообщения писались раньше. Для каждого типа - размер,
+ * сообщений в секунду на запись и чтение. Перед замером проверяется совместимость форматов:
+ * старый Gson читает новый формат, новый адаптер - старый, без потери значимых полей.
+ * <p>
+ * Аргументы: [игроков в GAME_STATE=40] [секунд на замер=1]
+ */
+public class SerializationBenchmark {
+    private static final Gson reflective = new Gson();
+
+    public static void main(String[] args) {
+        int visible = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        long measureNanos = (long) ((args.length > 1 ? Double.parseDouble(args[1]) : 1) * 1e9);
+
+        Map<String, Message> samples = samples(visible);
+        boolean compatible = true;
+        for (Map.Entry<String, Message> sample : samples.entrySet()) {
+            compatible &= checkCompatibility(sample.getKey(), sample.getValue());
+        }
+
+        System.out.println("[BENCH] Сериализация сообщений, игроков в GAME_STATE: " + visible);
+        System.out.println(String.format("[BENCH] %-18s %9s %9s %12s %12s %7s %12s %12s",
+                "тип", "байт", "было", "запись/с", "было/с", "x", "чтение/с", "было/с"));
+        for (Map.Entry<String, Message> sample : samples.entrySet()) {
+            Message message = sample.getValue();
+            String json = message.toJson();
+            String oldJson = reflective.toJson(message);
+
+            double write = measure(message, Message::toJson, measureNanos);
+            double oldWrite = measure(message, reflective::toJson, measureNanos);
+            double read = measure(json, Message::fromJson, measureNanos);
+            double oldRead = measure(oldJson, s -> reflective.fromJson(s, Message.class), measureNanos);
+
+            System.out.println(String.format("[BENCH] %-18s %9d %9d %12.0f %12.0f %7.1f %12.0f %12.0f",
+                    sample.getKey(), bytes(json), bytes(oldJson), write, oldWrite, write / oldWrite, read, oldRead));
+        }
+
+        if (!compatible) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean checkCompatibility(String name, Message message) {
+        String json = message.toJson();
+        boolean ok = true;
+        // Старый формат через новый адаптер
+        if (!json.equals(Message.fromJson(reflective.toJson(message)).toJson())) {
+            System.out.println("[BENCH] " + name + ": старый формат читается с расхождениями");
+            ok = false;
+        }
+        // Новый формат через рефлексивный Gson (клиент предыдущей версии)
+        if (!json.equals(reflective.fromJson(json, Message.class).toJson())) {
+            System.out.println("[BENCH] " + name + ": новый формат читается старым Gson с расхождениями");
+            ok = false;
+        }
+        return ok;
+    }
+
+    // Операций в секунду; результат накапливается, чтобы JIT не выбросил вызов
+    private static <T> double measure(T input, Function<T, ?> operation, long measureNanos) {
+        int sink = 0;
+        long warmupEnd = System.nanoTime() + measureNanos / 2;
+        while (System.nanoTime() < warmupEnd) {
+            sink += operation.apply(input).hashCode();
+        }
+
+        long operations = 0;
+        long started = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 100; i++) {
+                sink += operation.apply(input).hashCode();
+            }
+            operations += 100;
+            elapsed = System.nanoTime() - started;
+        } while (elapsed < measureNanos);
+
+        if (sink == 42) System.out.print("");
+        return operations * 1e9 / elapsed;
+    }
+
+    private static int bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static Map<String, Message> samples(int visible) {
+        Random random = new Random(1);
+        Map<String, Message> samples = new LinkedHashMap<>();
+
+        Message state = new Message(MessageTypes.GAME_STATE);
+        state.setRound(7);
+        state.setTargetColor((byte) 3);
+        state.setTimeLeft(2.35);
+        state.setDuration(4.5);
+        state.setGameStarted(true);
+        state.setIsRoundActive(true);
+        List<Player> players = new ArrayList<>(visible);
+        for (int i = 0; i < visible; i++) {
+            Player player = new Player(String.valueOf(i), "Игрок " + i);
+            player.setX(random.nextDouble() * 800);
+            player.setY(random.nextDouble() * 600);
+            player.setAlive(random.nextInt(4) != 0);
+            players.add(player);
+        }
+        state.setPlayers(players);
+        state.setTotalPlayers(visible * 3);
+        state.setAlivePlayers(visible * 2);
+        state.setGridWidth(40);
+        state.setGridHeight(30);
+        state.setFieldSeed(random.nextLong());
+        samples.put(MessageTypes.GAME_STATE, state);
+
+        Message move = new Message(MessageTypes.MOVE);
+        move.setX(412.5);
+        move.setY(233.25);
+        samples.put(MessageTypes.MOVE, move);
+
+        Message roundStart = new Message(MessageTypes.ROUND_START);
+        roundStart.setTargetColor((byte) 2);
+        roundStart.setDuration(4.5);
+        roundStart.setGridWidth(40);
+        roundStart.setGridHeight(30);
+        roundStart.setFieldSeed(random.nextLong());
+        samples.put(MessageTypes.ROUND_START, roundStart);
+
+        List<ScoreboardEntry> scores = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            scores.add(new ScoreboardEntry("Игрок " + i, 10 - i));
+        }
+        Message gameOver = new Message(MessageTypes.GAME_OVER);
+        gameOver.setWinner("Игрок 0");
+        gameOver.setScores(scores);
+        samples.put(MessageTypes.GAME_OVER, gameOver);
+
+        Message connect = new Message(MessageTypes.CONNECT);
+        connect.setPlayerId("17");
+        connect.setPlayerName("Игрок 0");
+        connect.setSessionToken("2947049c-d6da-4fec-81ad-cd7f0b44ed48");
+        samples.put(MessageTypes.CONNECT, connect);
+
+        Message status = new Message(MessageTypes.NODE_STATUS);
+        status.setHost("localhost");
+        status.setPort(5557);
+        status.setTotalPlayers(12);
+        status.setCapacity(500);
+        status.setConnections(14);
+        samples.put(MessageTypes.NODE_STATUS, status);
+        return samples;
+    }
+}
@@ -0,0 +1,117 @@
+package server.sim;
+
+import common.Message;
+import common.MessageTypes;
+import server.RoomClient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * Клиент комнаты в памяти. Сообщения считаются по типам, события матча (все, кроме GAME_STATE)
+ * сохраняются с виртуальным временем. Персональные снимки GAME_STATE не сериализуются:
+ * симуляция меряет логику комнаты, а не JSON.
+ */
+public class SimClient implements RoomClient {
+    private static final String TYPE_PREFIX = "{\"type\":\"";
+
+    public static final class Event {
+        public final long time;
+        public final Message message;
+
+        Event(long time, Message message) {
+            this.time = time;
+            this.message = message;
+        }
+    }
+
+    // id выдает комната при добавлении игрока
+    private volatile String playerId;
+    private final LongSupplier clock;
+    private final Map<String, Integer> counts = new HashMap<>();
+    private final List<Event> events = new ArrayList<>();
+    // Контрольная сумма событий матча с их временем - для сравнения прогонов
+    private final CRC32 digest = new CRC32();
+    private long snapshotPlayers = 0;
+    private boolean released = false;
+
+    public SimClient(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public String getPlayerId() {
+        return playerId;
+    }
+
+    public void setPlayerId(String playerId) {
+        this.playerId = playerId;
+    }
+
+    @Override
+    public synchronized void sendMessage(Message message) {
+        if (MessageTypes.GAME_STATE.equals(message.getType())) {
+            counts.merge(MessageTypes.GAME_STATE, 1, Integer::sum);
+            snapshotPlayers += message.getPlayers() != null ? message.getPlayers().size() : 0;
+            return;
+        }
+        sendRawMessage(message.toJson());
+    }
+
+    @Override
+    public synchronized void sendRawMessage(String json) {
+        String type = typeOf(json);
+        counts.merge(type, 1, Integer::sum);
+        if (MessageTypes.GAME_STATE.equals(type)) return;
+
+        long time = clock.getAsLong();
+        events.add(new Event(time, Message.fromJson(json)));
+        digest.update(json.getBytes(StandardCharsets.UTF_8));
+        digest.update((int) (time / 1_000_000L));
+    }
+
+    @Override
+    public void release() {
+        released = true;
+    }
+
+    @Override
+    public void playerRemoved(String removedId) {
+        if (removedId.equals(playerId)) {
+            playerId = null;
+        }
+    }
+
+    public synchronized int count(String type) {
+        return counts.getOrDefault(type, 0);
+    }
+
+    public synchronized List<Event> events() {
+        return new ArrayList<>(events);
+    }
+
+    // Сколько записей игроков пришло во всех снимках - мера стоимости рассылки
+    public synchronized long getSnapshotPlayers() {
+        return snapshotPlayers;
+    }
+
+    public synchronized long digest() {
+        return digest.getValue();
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    // Gson пишет поля в порядке объявления, type - первое
+    private static String typeOf(String json) {
+        if (!json.startsWith(TYPE_PREFIX)) return Message.fromJson(json).getType();
+        int end = json.indexOf('"', TYPE_PREFIX.length());
+        return json.substring(TYPE_PREFIX.length(), end);
+    }
+}
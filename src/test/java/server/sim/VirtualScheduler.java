@@ -0,0 +1,130 @@
+package server.sim;
+
+import server.Scheduler;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Планировщик с виртуальным временем: задачи выполняются в вызывающем потоке,
+ * время переходит сразу к сроку следующей задачи. Задачи с одинаковым сроком
+ * выполняются в порядке планирования, поэтому прогон полностью воспроизводим.
+ */
+public class VirtualScheduler implements Scheduler {
+    private final PriorityQueue<Task> queue = new PriorityQueue<>();
+    private long now = 0;
+    private long sequence = 0;
+    private long executed = 0;
+    private int errors = 0;
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return scheduleAt(task, now + unit.toNanos(delay));
+    }
+
+    @Override
+    public Timeout scheduleAt(Runnable task, long deadlineNanos) {
+        return add(new Task(task, Math.max(now, deadlineNanos), 0));
+    }
+
+    @Override
+    public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return add(new Task(task, now + unit.toNanos(initialDelay), unit.toNanos(period)));
+    }
+
+    /**
+     * Выполняет все задачи со сроком не позже now + duration и переводит часы на этот момент.
+     */
+    public void advance(long duration, TimeUnit unit) {
+        long target = now + unit.toNanos(duration);
+        while (!queue.isEmpty() && queue.peek().deadline <= target) {
+            runNext();
+        }
+        now = target;
+    }
+
+    /**
+     * Выполняет задачи, пока не выполнится условие или не пройдет limit виртуального времени.
+     * false - условие не выполнилось.
+     */
+    public boolean runUntil(BooleanSupplier condition, long limit, TimeUnit unit) {
+        long deadline = now + unit.toNanos(limit);
+        while (!condition.getAsBoolean()) {
+            if (queue.isEmpty() || queue.peek().deadline > deadline) {
+                now = Math.max(now, deadline);
+                return false;
+            }
+            runNext();
+        }
+        return true;
+    }
+
+    public long getExecuted() {
+        return executed;
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+
+    private void runNext() {
+        Task task = queue.poll();
+        if (task.cancelled) return;
+        now = task.deadline;
+        executed++;
+        try {
+            task.runnable.run();
+        } catch (RuntimeException e) {
+            errors++;
+            System.err.println("[SIM][ERROR] Ошибка в задаче: " + e);
+            e.printStackTrace();
+        }
+
+        if (task.period > 0 && !task.cancelled) {
+            task.deadline += task.period;
+            add(task);
+        }
+    }
+
+    private Task add(Task task) {
+        task.sequence = sequence++;
+        queue.add(task);
+        return task;
+    }
+
+    private static final class Task implements Timeout, Comparable<Task> {
+        private final Runnable runnable;
+        private final long period;
+        private long deadline;
+        private long sequence;
+        private boolean cancelled;
+
+        Task(Runnable runnable, long deadline, long period) {
+            this.runnable = runnable;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byDeadline = Long.compare(deadline, other.deadline);
+            return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+        }
+    }
+}